@@ -0,0 +1,102 @@
+package teammate.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Calls into the application classes.
+ *
+ * The application lives in the default package, which cannot be imported
+ * from a named package, and JMH refuses benchmarks in the default package.
+ * The calls go through method handles looked up once, which costs nothing
+ * next to the millisecond-scale operations being measured.
+ */
+final class App {
+
+    private static final MethodHandle NEW_CSV_MANAGER;
+    private static final MethodHandle LOAD_PARTICIPANTS;
+    private static final MethodHandle SAVE_TEAMS;
+    private static final MethodHandle NEW_TEAM_BUILDER;
+    private static final MethodHandle BUILD_TEAMS;
+    private static final MethodHandle NEW_GENERATOR;
+    private static final MethodHandle GENERATE;
+    private static final MethodHandle NEW_CLASSIFIER;
+    private static final MethodHandle CLASSIFY_ALL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> csvManager = Class.forName("CsvManager");
+            Class<?> teamBuilder = Class.forName("TeamBuilder");
+            Class<?> generator = Class.forName("ParticipantGenerator");
+            Class<?> classifier = Class.forName("PersonalityClassifier");
+
+            NEW_CSV_MANAGER = lookup.findConstructor(csvManager, MethodType.methodType(void.class));
+            LOAD_PARTICIPANTS = lookup.findVirtual(csvManager, "loadParticipants",
+                    MethodType.methodType(List.class, String.class));
+            SAVE_TEAMS = lookup.findVirtual(csvManager, "saveTeams",
+                    MethodType.methodType(void.class, String.class, List.class));
+            NEW_TEAM_BUILDER = lookup.findConstructor(teamBuilder,
+                    MethodType.methodType(void.class, int.class));
+            BUILD_TEAMS = lookup.findVirtual(teamBuilder, "buildTeams",
+                    MethodType.methodType(List.class, List.class));
+            NEW_GENERATOR = lookup.findConstructor(generator,
+                    MethodType.methodType(void.class, long.class, double.class));
+            GENERATE = lookup.findVirtual(generator, "write",
+                    MethodType.methodType(void.class, Path.class, long.class));
+            NEW_CLASSIFIER = lookup.findConstructor(classifier, MethodType.methodType(void.class));
+            CLASSIFY_ALL = lookup.findVirtual(classifier, "classifyAll",
+                    MethodType.methodType(void.class, List.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private App() {
+    }
+
+    static Object newCsvManager() {
+        return invoke(NEW_CSV_MANAGER);
+    }
+
+    static List<?> loadParticipants(Object csvManager, String path) {
+        return (List<?>) invoke(LOAD_PARTICIPANTS, csvManager, path);
+    }
+
+    static void saveTeams(Object csvManager, String path, List<?> teams) {
+        invoke(SAVE_TEAMS, csvManager, path, teams);
+    }
+
+    static Object newTeamBuilder(int teamSize) {
+        return invoke(NEW_TEAM_BUILDER, teamSize);
+    }
+
+    static List<?> buildTeams(Object teamBuilder, List<?> participants) {
+        return (List<?>) invoke(BUILD_TEAMS, teamBuilder, participants);
+    }
+
+    static void generateParticipants(Path target, long count, long seed) {
+        invoke(GENERATE, invoke(NEW_GENERATOR, seed, 0.0), target, count);
+    }
+
+    static Object newClassifier() {
+        return invoke(NEW_CLASSIFIER);
+    }
+
+    static void classifyAll(Object classifier, List<?> participants) {
+        invoke(CLASSIFY_ALL, classifier, participants);
+    }
+
+    private static Object invoke(MethodHandle handle, Object... args) {
+        try {
+            return handle.invokeWithArguments(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package teammate.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler and checks them against a stored
+ * baseline.
+ *
+ * java -jar target/benchmarks.jar [regex] [--baseline file.csv] [--update-baseline] [--tolerance 0.10]
+ *
+ * Results go to target/jmh-result.csv. With --baseline, every score is
+ * compared with the same benchmark, mode and params in the baseline:
+ * throughput may not drop, and latency percentiles and allocated bytes per
+ * operation may not rise, by more than the tolerance. Any regression exits
+ * with status 1. A missing baseline (or --update-baseline) stores this run
+ * as the new baseline. For plain JMH options use org.openjdk.jmh.Main.
+ */
+public final class BenchmarkMain {
+
+    private static final double DEFAULT_TOLERANCE = 0.10;
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String include = ".*";
+        Path baseline = null;
+        boolean updateBaseline = false;
+        double tolerance = DEFAULT_TOLERANCE;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "--update-baseline":
+                    updateBaseline = true;
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    include = args[i];
+            }
+        }
+
+        Path result = Paths.get("target", "jmh-result.csv");
+        Files.createDirectories(result.getParent());
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.CSV)
+                .result(result.toString())
+                .build();
+        new Runner(options).run();
+
+        if (baseline == null) {
+            return;
+        }
+        if (updateBaseline || !Files.exists(baseline)) {
+            Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Baseline saved to " + baseline);
+            return;
+        }
+
+        List<String> regressions = compare(read(baseline), read(result), tolerance);
+        if (regressions.isEmpty()) {
+            System.out.println("No regressions against " + baseline);
+            return;
+        }
+        System.out.println(regressions.size() + " regression(s) against " + baseline + ":");
+        for (String r : regressions) {
+            System.out.println("  " + r);
+        }
+        System.exit(1);
+    }
+
+    private static List<String> compare(Map<String, Score> baseline, Map<String, Score> current,
+                                        double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Score> e : current.entrySet()) {
+            Score now = e.getValue();
+            Score before = baseline.get(e.getKey());
+            if (before == null || now.direction == 0 || before.value == 0) continue;
+
+            double change = (now.value - before.value) / before.value;
+            if (change * now.direction < -tolerance) {
+                regressions.add(String.format("%s: %.3f -> %.3f %s (%+.1f%%)",
+                        e.getKey(), before.value, now.value, now.unit, change * 100));
+            }
+        }
+        return regressions;
+    }
+
+    // Rows of a JMH CSV result keyed by "benchmark [mode] params"
+    private static Map<String, Score> read(Path file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) return scores;
+
+        List<String> header = fields(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> f = fields(line);
+            if (f.size() < header.size()) continue;
+
+            StringBuilder key = new StringBuilder(f.get(benchmark))
+                    .append(" [").append(f.get(mode)).append(']');
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ")) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(f.get(i));
+                }
+            }
+
+            double value;
+            try {
+                value = Double.parseDouble(f.get(score).replace(',', '.'));
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            scores.put(key.toString(),
+                    new Score(value, f.get(unit), direction(f.get(benchmark), f.get(mode))));
+        }
+        return scores;
+    }
+
+    /**
+     * +1 when higher is better, -1 when lower is better, 0 when the value is
+     * not compared (e.g. GC counts and allocation rate per second).
+     */
+    private static int direction(String benchmark, String mode) {
+        int sep = Math.max(benchmark.lastIndexOf(':'), benchmark.lastIndexOf('·'));
+        if (sep < 0) {
+            return mode.equals("thrpt") ? 1 : -1;
+        }
+        String secondary = benchmark.substring(sep + 1);
+        if (secondary.equals("gc.alloc.rate.norm") || secondary.startsWith("p0.") || secondary.equals("p1.00")) {
+            return -1;
+        }
+        return 0;
+    }
+
+    private static List<String> fields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+
+    private static final class Score {
+        final double value;
+        final String unit;
+        final int direction;
+
+        Score(double value, String unit, int direction) {
+            this.value = value;
+            this.unit = unit;
+            this.direction = direction;
+        }
+    }
+}
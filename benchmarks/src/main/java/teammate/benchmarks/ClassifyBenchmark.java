@@ -0,0 +1,48 @@
+package teammate.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PersonalityClassifier.classifyAll over a loaded roster, the pass the
+ * registration pipeline makes over every committed batch. Small rosters run
+ * on the calling thread, large ones on the common pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class ClassifyBenchmark {
+
+    @Param({"500", "100000", "1000000"})
+    public int participants;
+
+    private Object classifier;
+    private List<?> roster;
+
+    @Setup
+    public void setUp() {
+        roster = App.loadParticipants(App.newCsvManager(),
+                RosterFiles.participants(participants).toString());
+        classifier = App.newClassifier();
+    }
+
+    @Benchmark
+    public void classifyAll() {
+        App.classifyAll(classifier, roster);
+    }
+}
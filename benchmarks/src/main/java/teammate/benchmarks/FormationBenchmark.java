@@ -0,0 +1,50 @@
+package teammate.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TeamBuilder.buildTeams across roster sizes and team sizes. The roster is
+ * loaded once per trial; only formation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class FormationBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int participants;
+
+    @Param({"3", "5", "8"})
+    public int teamSize;
+
+    private Object teamBuilder;
+    private List<?> roster;
+
+    @Setup
+    public void setUp() {
+        roster = App.loadParticipants(App.newCsvManager(),
+                RosterFiles.participants(participants).toString());
+        teamBuilder = App.newTeamBuilder(teamSize);
+    }
+
+    @Benchmark
+    public List<?> buildTeams() {
+        return App.buildTeams(teamBuilder, roster);
+    }
+}
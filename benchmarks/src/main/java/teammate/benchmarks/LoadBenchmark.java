@@ -0,0 +1,45 @@
+package teammate.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CsvManager.loadParticipants on generated rosters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class LoadBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int participants;
+
+    private Object csvManager;
+    private String path;
+
+    @Setup
+    public void setUp() {
+        csvManager = App.newCsvManager();
+        path = RosterFiles.participants(participants).toString();
+    }
+
+    @Benchmark
+    public List<?> loadParticipants() {
+        return App.loadParticipants(csvManager, path);
+    }
+}
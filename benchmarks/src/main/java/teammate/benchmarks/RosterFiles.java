@@ -0,0 +1,37 @@
+package teammate.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Participant CSVs for the benchmarks, made by ParticipantGenerator with a
+ * fixed seed. Files are written once per size under target/bench-data and
+ * reused by later runs and forks.
+ */
+final class RosterFiles {
+
+    private static final Path DATA_DIR = Paths.get("target", "bench-data");
+
+    private RosterFiles() {
+    }
+
+    static synchronized Path participants(int count) {
+        Path file = DATA_DIR.resolve("participants-" + count + ".csv");
+        if (Files.exists(file)) {
+            return file;
+        }
+        try {
+            Files.createDirectories(DATA_DIR);
+            Path tmp = Files.createTempFile(DATA_DIR, "participants-", ".tmp");
+            App.generateParticipants(tmp, count, 42L);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package teammate.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CsvManager.saveTeams for teams of five formed from generated rosters.
+ * Each call overwrites the same temp file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx8g"})
+public class SaveBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int participants;
+
+    private Object csvManager;
+    private List<?> teams;
+    private Path output;
+
+    @Setup
+    public void setUp() throws IOException {
+        csvManager = App.newCsvManager();
+        List<?> roster = App.loadParticipants(csvManager,
+                RosterFiles.participants(participants).toString());
+        teams = App.buildTeams(App.newTeamBuilder(5), roster);
+        output = Files.createTempFile("formed_teams", ".csv");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public Path saveTeams() {
+        App.saveTeams(csvManager, output.toString(), teams);
+        return output;
+    }
+}
@@ -0,0 +1,98 @@
+package teammate.benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test for the HTTP mode (TeamMateApp --serve). Each
+ * client thread sends one request at a time: a new registration with
+ * probability registerPercent, otherwise GET /status. Prints throughput,
+ * latency percentiles and the number of failed requests.
+ *
+ * java -cp benchmarks.jar teammate.benchmarks.ServerLoad
+ *      [baseUrl] [clients] [seconds] [registerPercent]
+ */
+public final class ServerLoad {
+
+    private static final String[] GAMES = {"Chess", "FIFA", "Basketball", "CS:GO", "DOTA 2", "Valorant"};
+    private static final String[] ROLES = {"Attacker", "Defender", "Strategist", "Supporter", "Coordinator"};
+
+    private ServerLoad() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String base = (args.length > 0) ? args[0] : "http://localhost:8080";
+        int clients = (args.length > 1) ? Integer.parseInt(args[1]) : 32;
+        int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+        int registerPercent = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong nextId = new AtomicLong(System.currentTimeMillis() % 1_000_000 * 1000);
+        AtomicLong failures = new AtomicLong();
+        long[][] latencies = new long[clients][];
+
+        Thread[] threads = new Thread[clients];
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            threads[c] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(client);
+                long[] samples = new long[1 << 16];
+                int count = 0;
+
+                while (System.nanoTime() < deadline) {
+                    HttpRequest request = (random.nextInt(100) < registerPercent)
+                            ? register(base, nextId.incrementAndGet(), random)
+                            : HttpRequest.newBuilder(URI.create(base + "/status")).GET().build();
+
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 300) failures.incrementAndGet();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                    if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+                    samples[count++] = System.nanoTime() - start;
+                }
+                latencies[client] = Arrays.copyOf(samples, count);
+            }, "load-client-" + c);
+            threads[c].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        if (all.length == 0) {
+            System.out.println("No requests completed.");
+            return;
+        }
+        System.out.printf("%d requests from %d clients in %d s: %.0f req/s, %d failed%n",
+                all.length, clients, seconds, all.length / (double) seconds, failures.get());
+        System.out.printf("latency ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), all[all.length - 1] / 1e6);
+    }
+
+    private static HttpRequest register(String base, long id, SplittableRandom random) {
+        String body = "{\"id\":\"L" + id + "\",\"name\":\"Load " + id + "\""
+                + ",\"email\":\"load" + id + "@example.edu\""
+                + ",\"game\":\"" + GAMES[random.nextInt(GAMES.length)] + "\""
+                + ",\"role\":\"" + ROLES[random.nextInt(ROLES.length)] + "\""
+                + ",\"skill\":" + (1 + random.nextInt(10))
+                + ",\"score\":" + (50 + random.nextInt(51)) + "}";
+        return HttpRequest.newBuilder(URI.create(base + "/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+}
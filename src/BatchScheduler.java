@@ -0,0 +1,311 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Forms teams for many events in one run: each job loads its participants
+ * CSV, forms teams and saves them, and all jobs run side by side on a
+ * ForkJoinPool.
+ *
+ * Jobs are forked largest input first. Idle workers steal the oldest forks,
+ * so the big jobs get started early while small ones fill in around them
+ * (the forking worker takes them from the smallest up).
+ * Inside a job the large steps split themselves on the pool: files of
+ * 8 MB or more are parsed in chunks, rosters of
+ * TeamBuilder.PARALLEL_MIN_PARTICIPANTS or more are formed in shards and
+ * long team lists are formatted in slices. Participants are classified as
+ * their rows are parsed.
+ */
+public class BatchScheduler {
+
+    private static final Metrics.Timer JOB = Metrics.timer("batch.job");
+    private static final Metrics.Counter FAILED = Metrics.counter("batch.failed");
+
+    /**
+     * One line of the manifest: input CSV, team size and output path.
+     */
+    public static final class Job {
+        private final Path input;
+        private final int teamSize;
+        private final Path output;
+
+        public Job(Path input, int teamSize, Path output) {
+            if (teamSize < 2) {
+                throw new IllegalArgumentException("Team size must be at least 2.");
+            }
+            this.input = input;
+            this.teamSize = teamSize;
+            this.output = output;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public int getTeamSize() {
+            return teamSize;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+    }
+
+    /**
+     * What a job did and how long each step took, or why it failed.
+     */
+    public static final class Result {
+        private final Job job;
+        private final int participants;
+        private final long rejected;
+        private final int teams;
+        private final int unassigned;
+        private final long loadNanos;
+        private final long buildNanos;
+        private final long saveNanos;
+        private final String error;
+
+        private Result(Job job, int participants, long rejected, int teams, int unassigned,
+                       long loadNanos, long buildNanos, long saveNanos, String error) {
+            this.job = job;
+            this.participants = participants;
+            this.rejected = rejected;
+            this.teams = teams;
+            this.unassigned = unassigned;
+            this.loadNanos = loadNanos;
+            this.buildNanos = buildNanos;
+            this.saveNanos = saveNanos;
+            this.error = error;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        public int getParticipants() {
+            return participants;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public int getTeams() {
+            return teams;
+        }
+
+        public int getUnassigned() {
+            return unassigned;
+        }
+
+        public long getLoadMillis() {
+            return loadNanos / 1_000_000;
+        }
+
+        public long getBuildMillis() {
+            return buildNanos / 1_000_000;
+        }
+
+        public long getSaveMillis() {
+            return saveNanos / 1_000_000;
+        }
+
+        public long getTotalMillis() {
+            return (loadNanos + buildNanos + saveNanos) / 1_000_000;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+
+        /**
+         * Why the job failed (null when it did not).
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    private final FormationLimits limits;
+    private final ForkJoinPool pool;
+    private final CsvManager csvManager = new CsvManager();
+
+    public BatchScheduler() {
+        this(FormationLimits.DEFAULT, ForkJoinPool.commonPool());
+    }
+
+    public BatchScheduler(ForkJoinPool pool) {
+        this(FormationLimits.DEFAULT, pool);
+    }
+
+    public BatchScheduler(FormationLimits limits) {
+        this(limits, ForkJoinPool.commonPool());
+    }
+
+    public BatchScheduler(FormationLimits limits, ForkJoinPool pool) {
+        this.limits = limits;
+        this.pool = pool;
+    }
+
+    /**
+     * Reads a manifest: one job per line as input,teamSize,output. Blank
+     * lines, lines starting with '#' and an "input,teamSize,output" header
+     * are skipped; relative paths are taken from the manifest's directory.
+     */
+    public static List<Job> readManifest(Path manifest) throws IOException {
+        Path base = manifest.toAbsolutePath().getParent();
+        List<Job> jobs = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] fields = line.split(",", -1);
+                if (fields.length != 3) {
+                    throw new IllegalArgumentException("Manifest line " + lineNumber
+                            + ": expected input,teamSize,output");
+                }
+                if (jobs.isEmpty() && fields[1].trim().equalsIgnoreCase("teamSize")) continue;
+
+                int teamSize;
+                try {
+                    teamSize = Integer.parseInt(fields[1].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Manifest line " + lineNumber
+                            + ": team size must be a whole number");
+                }
+                if (teamSize < 2) {
+                    throw new IllegalArgumentException("Manifest line " + lineNumber
+                            + ": team size must be at least 2");
+                }
+                jobs.add(new Job(base.resolve(fields[0].trim()), teamSize, base.resolve(fields[2].trim())));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs every job and returns their results in manifest order. A job
+     * that fails is reported in its result; the others carry on.
+     */
+    public List<Result> run(List<Job> jobs) {
+        List<JobTask> tasks = new ArrayList<>(jobs.size());
+        for (Job job : jobs) {
+            tasks.add(new JobTask(job, inputSize(job)));
+        }
+
+        List<JobTask> largestFirst = new ArrayList<>(tasks);
+        largestFirst.sort(Comparator.comparingLong((JobTask t) -> t.inputBytes).reversed());
+        pool.invoke(ForkJoinTask.adapt(() -> {
+            for (JobTask task : largestFirst) {
+                task.fork();
+            }
+            for (JobTask task : largestFirst) {
+                task.join();
+            }
+        }));
+
+        List<Result> results = new ArrayList<>(tasks.size());
+        for (JobTask task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /**
+     * A table of the results, one line per job plus a total line comparing
+     * the time spent in jobs with the wall-clock time of the run.
+     */
+    public static String summary(List<Result> results, long wallMillis) {
+        StringBuilder sb = new StringBuilder(String.format("%-32s %5s %9s %8s %7s %8s %8s %8s %8s %8s%n",
+                "Input", "Size", "Rows", "Rejected", "Teams", "NoTeam", "Load ms", "Form ms", "Save ms", "Total ms"));
+        long jobMillis = 0;
+        int failed = 0;
+        for (Result r : results) {
+            String name = r.getJob().getInput().getFileName().toString();
+            if (r.isFailed()) {
+                failed++;
+                sb.append(String.format("%-32s %5d FAILED: %s%n", name, r.getJob().getTeamSize(), r.getError()));
+                continue;
+            }
+            jobMillis += r.getTotalMillis();
+            sb.append(String.format("%-32s %5d %9d %8d %7d %8d %8d %8d %8d %8d%n",
+                    name, r.getJob().getTeamSize(), r.getParticipants(), r.getRejected(), r.getTeams(), r.getUnassigned(),
+                    r.getLoadMillis(), r.getBuildMillis(), r.getSaveMillis(), r.getTotalMillis()));
+        }
+        sb.append(String.format("%d jobs (%d failed) in %d ms; %d ms of job time (%.1fx)",
+                results.size(), failed, wallMillis, jobMillis, jobMillis / (double) Math.max(1, wallMillis)));
+        return sb.toString();
+    }
+
+    private static long inputSize(Job job) {
+        try {
+            return Files.size(job.getInput());
+        } catch (IOException e) {
+            return 0;     // fails (and is reported) when the job runs
+        }
+    }
+
+    private final class JobTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final Job job;
+        private final long inputBytes;
+
+        JobTask(Job job, long inputBytes) {
+            this.job = job;
+            this.inputBytes = inputBytes;
+        }
+
+        @Override
+        protected Result compute() {
+            long start = System.nanoTime();
+            try {
+                CsvManager.LoadResult load = csvManager.load(job.getInput().toString(), pool);
+                LoadReport report = load.getReport();
+                if (!report.isHeaderValid()) {
+                    return failed(report.getHeaderError());
+                }
+                List<Participant> participants = load.getParticipants();
+                long loaded = System.nanoTime();
+
+                TeamBuilder builder = new TeamBuilder(job.getTeamSize(), limits, FormationStrategy.greedy());
+                List<Team> teams = (participants.size() >= TeamBuilder.PARALLEL_MIN_PARTICIPANTS)
+                        ? builder.buildTeamsParallel(participants, pool)
+                        : builder.buildTeams(participants);
+                long built = System.nanoTime();
+
+                String output = job.getOutput().toString();
+                csvManager.saveTeams(output, teams, output.endsWith(".gz"), pool);
+                long saved = System.nanoTime();
+                JOB.record(saved - start);
+
+                int placed = 0;
+                for (Team team : teams) {
+                    placed += team.getSize();
+                }
+                return new Result(job, participants.size(), report.getRejectedCount(), teams.size(),
+                        participants.size() - placed, loaded - start, built - loaded, saved - built, null);
+            } catch (IOException | RuntimeException e) {
+                return failed(e.getMessage());
+            }
+        }
+
+        private Result failed(String error) {
+            FAILED.increment();
+            return new Result(job, 0, 0, 0, 0, 0, 0, 0, (error != null) ? error : "unknown error");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Case-insensitive string -> small integer code table.
+ * Used so that games, roles and personality types can be compared
+ * and counted as ints instead of with equalsIgnoreCase.
+ */
+public class CodeDictionary {
+
+    public static final int NONE = -1;
+
+    // Shared tables (codes are stable for the lifetime of the JVM)
+    public static final CodeDictionary GAMES = new CodeDictionary(
+            "Chess", "FIFA", "Basketball", "CS:GO", "DOTA 2", "Valorant");
+
+    public static final CodeDictionary ROLES = new CodeDictionary(
+            "Attacker", "Defender", "Strategist", "Supporter", "Coordinator");
+
+    public static final CodeDictionary TYPES = new CodeDictionary(
+            "LEADER", "BALANCED", "THINKER", "UNKNOWN");
+
+    public static final int TYPE_LEADER = 0;
+    public static final int TYPE_BALANCED = 1;
+    public static final int TYPE_THINKER = 2;
+    public static final int TYPE_UNKNOWN = 3;
+
+    private final Map<String, Integer> codes =
+            new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final List<String> values = new ArrayList<>();
+    private final int seededSize;
+
+    public CodeDictionary(String... seed) {
+        for (String s : seed) {
+            codeOf(s);
+        }
+        seededSize = values.size();
+    }
+
+    /**
+     * Number of built-in values (codes 0 up to this).
+     */
+    public int seededSize() {
+        return seededSize;
+    }
+
+    /**
+     * Code for the given value, adding it if it has not been seen yet.
+     * Returns NONE for null.
+     */
+    public int codeOf(String value) {
+        if (value == null) return NONE;
+
+        Integer code = codes.get(value);
+        if (code != null) return code;
+
+        synchronized (this) {
+            code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Code for the given value without adding it (NONE when unknown).
+     */
+    public int find(String value) {
+        if (value == null) return NONE;
+        Integer code = codes.get(value);
+        return code == null ? NONE : code;
+    }
+
+    public synchronized String valueOf(int code) {
+        return (code < 0 || code >= values.size()) ? null : values.get(code);
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+}
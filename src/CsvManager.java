@@ -1,6 +1,12 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class CsvManager {
 
@@ -17,6 +23,12 @@ public class CsvManager {
             "PersonalityType"
     };
 
+    private static final Metrics.Timer PARSE = Metrics.timer("load.parse");
+    private static final Metrics.Histogram PARSE_ROWS_PER_SECOND = Metrics.histogram("load.parse.rowsPerSecond");
+    private static final Metrics.Timer SNAPSHOT_READ = Metrics.timer("load.snapshot");
+    private static final Metrics.Timer SAVE = Metrics.timer("save.teams");
+    private static final Metrics.Counter TEAMS_SAVED = Metrics.counter("save.teamsWritten");
+
     /**
      * Verify that the CSV:
      *  - exists
@@ -34,28 +46,12 @@ public class CsvManager {
 
         try (BufferedReader br = new BufferedReader(new FileReader(file))) {
 
-            String header = br.readLine();
-            if (header == null || header.trim().isEmpty()) {
-                System.out.println("CSV verification failed: file is empty.");
-                return false;
-            }
-
-            String[] columns = header.split(",");
-            if (columns.length < EXPECTED_HEADERS.length) {
-                System.out.println("CSV verification failed: Please try again.");
+            String error = checkHeader(br.readLine());
+            if (error != null) {
+                System.out.println("CSV verification failed: " + error);
                 return false;
             }
 
-            for (int i = 0; i < EXPECTED_HEADERS.length; i++) {
-                String actual = columns[i].trim();
-                String expected = EXPECTED_HEADERS[i];
-                if (!actual.equalsIgnoreCase(expected)) {
-                    System.out.println("CSV verification failed: column " + (i + 1)
-                            + " should be '" + expected + "' but found '" + actual + "'.");
-                    return false;
-                }
-            }
-
             // Passed all checks
             return true;
 
@@ -65,94 +61,258 @@ public class CsvManager {
         }
     }
 
+    static String[] expectedHeaders() {
+        return EXPECTED_HEADERS.clone();
+    }
+
     /**
-     * Load participants from CSV.
-     * Assumes header format:
-     * ID,Name,Email,PreferredGame,SkillLevel,PreferredRole,PersonalityScore,PersonalityType
+     * Check a header line against EXPECTED_HEADERS.
+     * Returns null when it matches, otherwise what is wrong with it.
      */
-    public List<Participant> loadParticipants(String filePath) throws IOException {
-
-        List<Participant> list = new ArrayList<>();
-
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+    static String checkHeader(String header) {
+        if (header == null || header.trim().isEmpty()) {
+            return "file is empty.";
+        }
 
-            String line = br.readLine(); // read header
-            if (line == null) return list;
+        String[] columns = header.split(",");
+        if (columns.length < EXPECTED_HEADERS.length) {
+            return "expected " + EXPECTED_HEADERS.length + " columns but found " + columns.length + ".";
+        }
 
-            while ((line = br.readLine()) != null) {
+        for (int i = 0; i < EXPECTED_HEADERS.length; i++) {
+            String actual = columns[i].trim();
+            String expected = EXPECTED_HEADERS[i];
+            if (!actual.equalsIgnoreCase(expected)) {
+                return "column " + (i + 1)
+                        + " should be '" + expected + "' but found '" + actual + "'.";
+            }
+        }
+        return null;
+    }
 
-                String[] parts = line.split(",");
-                if (parts.length < 8) continue; // Not enough columns → skip
+    /**
+     * Verify and load the CSV in one pass.
+     * The header is checked first; rows that fail validation are collected
+     * in the returned report instead of being printed.
+     */
+    public LoadResult load(String filePath) throws IOException {
+        return load(filePath, ForkJoinPool.commonPool());
+    }
 
+    /**
+     * Same as load, with a large file parsed in chunks on pool.
+     */
+    public LoadResult load(String filePath, ForkJoinPool pool) throws IOException {
+        LoadReport report = new LoadReport(filePath);
 
-                String id       = parts[0].trim();
-                String name     = parts[1].trim();
-                String email    = parts[2].trim();
-                String game     = parts[3].trim();
-                String skillStr = parts[4].trim();
-                String role     = parts[5].trim();
-                String scoreStr = parts[6].trim();
-                String type     = parts[7].trim();
+        if (!new File(filePath).exists()) {
+            report.setHeaderError("file does not exist " + filePath);
+            return new LoadResult(new ArrayList<>(), report);
+        }
 
-                if (id.isEmpty() || name.isEmpty() || game.isEmpty()
-                        || skillStr.isEmpty() || role.isEmpty() || type.isEmpty()) {
-                    System.out.println("Skipping row due to missing required fields: " + line);
-                    continue;
-                }
+        long start = System.nanoTime();
+        List<Participant> list = MappedCsvLoader.loadParticipants(Paths.get(filePath), report, pool);
+        long elapsed = System.nanoTime() - start;
 
-                // Parse skill safely
-                int skill;
-                try {
-                    skill = Integer.parseInt(skillStr);
-                } catch (Exception e) {
-                    System.out.println("Skipping row due to invalid skill value: " + line);
-                    continue;
-                }
+        PARSE.record(elapsed);
+        PARSE_ROWS_PER_SECOND.record(report.getRowsRead() * 1_000_000_000L / Math.max(1, elapsed));
+        report.addToMetrics();
+        return new LoadResult(list, report);
+    }
 
-                // (optional extra rule)
-                if (skill < 1 || skill > 10) {
-                    System.out.println("Skipping row due to invalid skill range (1–10): " + line);
-                    continue;
-                }
+    /**
+     * Same as load, but through the binary snapshot kept next to the file
+     * (see ParticipantSnapshot). When the file has not changed since the
+     * snapshot was written, the snapshot is read instead of the text;
+     * otherwise the text is parsed and a fresh snapshot is written.
+     * A snapshot that cannot be written is skipped with a message.
+     */
+    public LoadResult loadCached(String filePath) throws IOException {
+        Path csv = Paths.get(filePath);
+        if (!Files.isRegularFile(csv)) {
+            return load(filePath);
+        }
 
-                Participant p = new Participant(id, name);
-                p.setPreferredGame(game);
-                p.setPreferredRole(role);
-                p.setSkillRating(skill);
-                p.setPersonalityType(type.toUpperCase());
+        long start = System.nanoTime();
+        ParticipantSnapshot.Fingerprint fingerprint = ParticipantSnapshot.fingerprint(csv);
+        LoadResult cached = ParticipantSnapshot.read(csv, fingerprint);
+        if (cached != null) {
+            SNAPSHOT_READ.recordSince(start);
+            return cached;
+        }
 
-                list.add(p);
+        LoadResult result = load(filePath);
+        if (result.getReport().isHeaderValid()) {
+            try {
+                ParticipantSnapshot.write(csv, fingerprint, result.getParticipants(), result.getReport());
+            } catch (IOException | IllegalStateException e) {
+                System.out.println("Could not write snapshot for " + filePath + ": " + e.getMessage());
             }
+        }
+        return result;
+    }
 
+    /**
+     * Load participants from CSV.
+     * Assumes header format:
+     * ID,Name,Email,PreferredGame,SkillLevel,PreferredRole,PersonalityScore,PersonalityType
+     *
+     * The file is read as UTF-8 through a memory-mapped channel and large
+     * files are parsed in parallel (see MappedCsvLoader). When PersonalityScore
+     * holds a 0-100 score the type is classified from it; otherwise the
+     * PersonalityType column is used as written.
+     */
+    public List<Participant> loadParticipants(String filePath) throws IOException {
+        LoadResult result = load(filePath);
+        if (!result.getReport().isHeaderValid() || result.getReport().getRejectedCount() > 0) {
+            System.out.println(result.getReport().summary());
         }
+        return result.getParticipants();
+    }
 
-        return list;
+    /**
+     * Same as load, but straight into columnar storage without creating
+     * Participant objects. Header problems and rejected rows go to the report.
+     */
+    public ParticipantStore loadParticipantStore(String filePath, LoadReport report)
+            throws IOException {
+        return MappedCsvLoader.loadStore(Paths.get(filePath), report);
     }
 
     /**
-     * Save formed teams to CSV.
+     * Save formed teams to CSV (UTF-8).
      * Header:
      * TeamName,ID,Name,Game,Role,Skill,Personality
+     *
+     * A path ending in ".gz" is written gzip-compressed.
      */
     public void saveTeams(String filePath, List<Team> teams) throws IOException {
+        saveTeams(filePath, teams, filePath.endsWith(".gz"), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same layout as saveTeams; large team lists are formatted in parallel
+     * on the pool (see TeamCsvExporter).
+     */
+    public void saveTeams(String filePath, List<Team> teams, boolean gzip, ForkJoinPool pool)
+            throws IOException {
+        long start = System.nanoTime();
+        new TeamCsvExporter(pool).write(Paths.get(filePath), teams, gzip);
+        SAVE.recordSince(start);
+        TEAMS_SAVED.add(teams.size());
+    }
+
+    /**
+     * Append participants to a participants CSV, in the layout load reads
+     * (UTF-8, header included when the file is new or empty). The layout has
+     * no quoting, so commas and line breaks inside values become spaces. The
+     * score is left empty when the type did not come from it, so loading the
+     * file again keeps the type.
+     */
+    public void appendParticipants(String filePath, List<Participant> list) throws IOException {
+        Path file = Paths.get(filePath);
+        boolean needsHeader = !Files.exists(file) || Files.size(file) == 0;
+
+        try (BufferedWriter bw = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (needsHeader) {
+                bw.write(String.join(",", EXPECTED_HEADERS));
+                bw.newLine();
+            }
+            for (Participant p : list) {
+                int score = p.getPersonalityScoreScaled();
+                boolean typeFromScore = PersonalityClassifier.typeOf(score).equalsIgnoreCase(p.getPersonalityType());
+                bw.write(field(p.getId()) + "," +
+                        field(p.getName()) + "," +
+                        field(p.getEmail()) + "," +
+                        field(p.getPreferredGame()) + "," +
+                        p.getSkillRating() + "," +
+                        field(p.getPreferredRole()) + "," +
+                        (typeFromScore ? Integer.toString(score) : "") + "," +
+                        field(p.getPersonalityType()));
+                bw.newLine();
+            }
+        }
+    }
+
+    // A value as one unquoted CSV field
+    private static String field(String value) {
+        if (value == null) return "";
+        return value.replace(',', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Writer for teams that are produced one at a time (same layout and
+     * UTF-8 encoding as saveTeams; the header is written on open).
+     */
+    public TeamWriter openTeamWriter(String filePath) throws IOException {
+        return new TeamWriter(Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Iterate over the participants in a CSV without loading the whole file.
+     * Same validation as load; the report fills in as rows are read.
+     */
+    public MappedCsvLoader.ParticipantIterator openParticipants(String filePath, LoadReport report)
+            throws IOException {
+        return MappedCsvLoader.iterate(Paths.get(filePath), report);
+    }
+
+    /**
+     * As openParticipants, reading windowBytes of the file at a time (see
+     * StreamingTeamBuilder.inputWindowBytes).
+     */
+    public MappedCsvLoader.ParticipantIterator openParticipants(String filePath, LoadReport report,
+                                                                long windowBytes) throws IOException {
+        return MappedCsvLoader.iterate(Paths.get(filePath), report, windowBytes);
+    }
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filePath))) {
+    public static class TeamWriter implements Closeable {
+        private final BufferedWriter bw;
 
-            bw.write("TeamName,ID,Name,Game,Role,Skill,Personality");
+        TeamWriter(BufferedWriter bw) throws IOException {
+            this.bw = bw;
+            bw.write(TeamCsvExporter.HEADER);
             bw.newLine();
+        }
 
-            for (Team team : teams) {
-                for (Participant p : team.getMembers()) {
-                    bw.write(team.getTeamName() + "," +
-                            p.getId() + "," +
-                            p.getName() + "," +
-                            p.getPreferredGame() + "," +
-                            p.getPreferredRole() + "," +
-                            p.getSkillRating() + "," +
-                            p.getPersonalityType());
-                    bw.newLine();
-                }
+        public void write(Team team) throws IOException {
+            for (Participant p : team.getMembers()) {
+                bw.write(team.getTeamName() + "," +
+                        p.getId() + "," +
+                        p.getName() + "," +
+                        p.getPreferredGame() + "," +
+                        p.getPreferredRole() + "," +
+                        p.getSkillRating() + "," +
+                        p.getPersonalityType());
+                bw.newLine();
             }
         }
+
+        @Override
+        public void close() throws IOException {
+            bw.close();
+        }
+    }
+
+    /**
+     * Participants from a single-pass load together with its report.
+     */
+    public static class LoadResult {
+        private final List<Participant> participants;
+        private final LoadReport report;
+
+        public LoadResult(List<Participant> participants, LoadReport report) {
+            this.participants = participants;
+            this.report = report;
+        }
+
+        public List<Participant> getParticipants() {
+            return participants;
+        }
+
+        public LoadReport getReport() {
+            return report;
+        }
     }
 }
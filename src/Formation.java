@@ -0,0 +1,82 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Result of forming teams over a ParticipantStore: the team number of every
+ * row (-1 when unassigned) and the rows in the order they were placed, so
+ * teams can be rebuilt with members in the same order.
+ */
+public class Formation {
+
+    private final int teamCount;
+    private final int[] teamOf;
+    private int[] placed;
+    private int placedCount;
+
+    public Formation(int rowCount, int teamCount) {
+        this.teamCount = teamCount;
+        this.teamOf = new int[rowCount];
+        this.placed = new int[Math.max(16, Math.min(rowCount, 1 << 20))];
+        Arrays.fill(teamOf, -1);
+    }
+
+    public int getTeamCount() {
+        return teamCount;
+    }
+
+    public int getRowCount() {
+        return teamOf.length;
+    }
+
+    public int getTeamOf(int row) {
+        return teamOf[row];
+    }
+
+    public int getPlacedCount() {
+        return placedCount;
+    }
+
+    public int getPlacedRow(int i) {
+        return placed[i];
+    }
+
+    void place(int row, int team) {
+        assign(row, team);
+        appendPlaced(row);
+    }
+
+    void assign(int row, int team) {
+        teamOf[row] = team;
+    }
+
+    void appendPlaced(int row) {
+        if (placedCount == placed.length) {
+            placed = Arrays.copyOf(placed, placed.length * 2);
+        }
+        placed[placedCount++] = row;
+    }
+
+    /**
+     * Build "Team 1".."Team n" with members added in placement order.
+     */
+    public List<Team> toTeams(IntFunction<Participant> participantOfRow) {
+        return toTeams(participantOfRow, 1);
+    }
+
+    /**
+     * Same as toTeams, numbering the teams from firstNumber.
+     */
+    public List<Team> toTeams(IntFunction<Participant> participantOfRow, int firstNumber) {
+        List<Team> teams = new ArrayList<>(teamCount);
+        for (int i = 0; i < teamCount; i++) {
+            teams.add(new Team("Team " + (firstNumber + i)));
+        }
+        for (int i = 0; i < placedCount; i++) {
+            int row = placed[i];
+            teams.get(teamOf[row]).addMember(participantOfRow.apply(row));
+        }
+        return teams;
+    }
+}
@@ -0,0 +1,378 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formed teams remembered by roster content and formation parameters, so
+ * forming again on an unchanged roster returns at once.
+ *
+ * The key is a SHA-256 over what formation looks at, row by row in roster
+ * order (game, role, personality type and skill), plus a parameter string
+ * naming team size, limits and mode. Any change to the roster gives a new
+ * key; entries for other rosters stay. Teams are stored as member
+ * positions in the roster, and a hit builds fresh Team objects from the
+ * caller's list.
+ *
+ * Entries are kept in least-recently-used order and evicted beyond
+ * maxEntries, or beyond maxRows stored positions in total. With a
+ * directory, each entry is also written there as "<key>.teams" and read
+ * back on a miss, so the cache outlives the process; evicted entries are
+ * deleted from the directory too.
+ */
+public class FormationCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 16;
+    public static final long DEFAULT_MAX_ROWS = 4_000_000;
+
+    static final String SUFFIX = ".teams";
+
+    private static final int MAGIC = 0x544D4643;       // "TMFC"
+    private static final int VERSION = 1;
+
+    private static final Metrics.Counter HITS = Metrics.counter("cache.hits");
+    private static final Metrics.Counter MISSES = Metrics.counter("cache.misses");
+    private static final Metrics.Counter EVICTIONS = Metrics.counter("cache.evictions");
+
+    /**
+     * Content hash of a roster plus formation parameters.
+     */
+    public static final class Key {
+        private final String hash;
+        private final int rows;
+
+        private Key(String hash, int rows) {
+            this.hash = hash;
+            this.rows = rows;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).hash.equals(hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return hash;
+        }
+    }
+
+    /**
+     * Teams found in the cache and the strategy that formed them.
+     */
+    public static final class Result {
+        private final List<Team> teams;
+        private final FormationStrategy strategy;
+
+        private Result(List<Team> teams, FormationStrategy strategy) {
+            this.teams = teams;
+            this.strategy = strategy;
+        }
+
+        public List<Team> getTeams() {
+            return teams;
+        }
+
+        public FormationStrategy getStrategy() {
+            return strategy;
+        }
+    }
+
+    // Member positions of every team, in member order
+    private static final class Entry {
+        final int[][] members;
+        final String strategy;
+        final long weight;
+
+        Entry(int[][] members, String strategy) {
+            this.members = members;
+            this.strategy = strategy;
+            long w = members.length;
+            for (int[] team : members) w += team.length;
+            this.weight = w;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxRows;
+    private final Path directory;
+
+    // Guarded by this
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long rows;
+
+    public FormationCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_ROWS, null);
+    }
+
+    /**
+     * directory may be null for a cache held in memory only. Entry files
+     * beyond maxEntries already in the directory are deleted, oldest first.
+     */
+    public FormationCache(int maxEntries, long maxRows, Path directory) {
+        if (maxEntries < 1 || maxRows < 1) {
+            throw new IllegalArgumentException("Cache limits must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+        this.directory = directory;
+        if (directory != null) {
+            prune();
+        }
+    }
+
+    /**
+     * Key for forming participants (in this order) with parameters, which
+     * should name everything else the result depends on.
+     */
+    public static Key key(List<Participant> participants, String parameters) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        // Codes are only meaningful within this process, so the code values in use are hashed as well
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        int maxGame = -1, maxRole = -1, maxType = -1;
+        for (Participant p : participants) {
+            if (buf.remaining() < Long.BYTES) {
+                digest.update(buf.flip());
+                buf.clear();
+            }
+            int game = p.getGameCode();
+            int role = p.getRoleCode();
+            int type = p.getTypeCode();
+            buf.putLong(((long) (type + 1) << 48) | ((long) (role + 1) << 32) | ((long) (game + 1) << 16)
+                    | (p.getSkillRating() & 0xFFFF));
+            maxGame = Math.max(maxGame, game);
+            maxRole = Math.max(maxRole, role);
+            maxType = Math.max(maxType, type);
+        }
+        digest.update(buf.flip());
+
+        hashValues(digest, CodeDictionary.GAMES, maxGame);
+        hashValues(digest, CodeDictionary.ROLES, maxRole);
+        hashValues(digest, CodeDictionary.TYPES, maxType);
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new Key(hex.toString(), participants.size());
+    }
+
+    private static void hashValues(MessageDigest digest, CodeDictionary dictionary, int maxCode) {
+        for (int code = 0; code <= maxCode; code++) {
+            digest.update(dictionary.valueOf(code).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        digest.update((byte) 0xFF);
+    }
+
+    /**
+     * Teams for key, built over participants (the roster key was made
+     * from), or null when they are not cached.
+     */
+    public Result get(Key key, List<Participant> participants) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null && directory != null) {
+            entry = read(key);
+            if (entry != null) {
+                synchronized (this) {
+                    insert(key, entry);
+                }
+            }
+        }
+        if (entry == null) {
+            MISSES.increment();
+            return null;
+        }
+        HITS.increment();
+
+        List<Team> teams = new ArrayList<>(entry.members.length);
+        for (int t = 0; t < entry.members.length; t++) {
+            Team team = new Team("Team " + (t + 1));
+            for (int position : entry.members[t]) {
+                team.addMember(participants.get(position));
+            }
+            teams.add(team);
+        }
+        return new Result(teams, FormationStrategy.named(entry.strategy));
+    }
+
+    /**
+     * Remember teams formed from participants by strategy. Teams holding
+     * anyone not in participants are not cached.
+     */
+    public void put(Key key, List<Participant> participants, List<Team> teams, FormationStrategy strategy) {
+        Map<Participant, Integer> positions = new IdentityHashMap<>(participants.size() * 2);
+        for (int i = 0; i < participants.size(); i++) {
+            positions.put(participants.get(i), i);
+        }
+
+        int[][] members = new int[teams.size()][];
+        for (int t = 0; t < teams.size(); t++) {
+            List<Participant> team = teams.get(t).getMembers();
+            members[t] = new int[team.size()];
+            for (int m = 0; m < team.size(); m++) {
+                Integer position = positions.get(team.get(m));
+                if (position == null) return;
+                members[t][m] = position;
+            }
+        }
+
+        Entry entry = new Entry(members, strategy.toString());
+        synchronized (this) {
+            insert(key, entry);
+        }
+        if (directory != null) {
+            try {
+                write(key, entry);
+            } catch (IOException e) {
+                System.out.println("Could not write cached teams: " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void insert(Key key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) rows -= previous.weight;
+        rows += entry.weight;
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || rows > maxRows) && entries.size() > 1) {
+            Map.Entry<Key, Entry> e = eldest.next();
+            rows -= e.getValue().weight;
+            eldest.remove();
+            EVICTIONS.increment();
+            if (directory != null) {
+                try {
+                    Files.deleteIfExists(pathFor(e.getKey()));
+                } catch (IOException ignored) {
+                    // Left for the next prune
+                }
+            }
+        }
+    }
+
+    private Path pathFor(Key key) {
+        return directory.resolve(key.hash + SUFFIX);
+    }
+
+    // The entry stored for key, or null when there is none or it cannot be read
+    private Entry read(Key key) {
+        Path file = pathFor(key);
+        if (!Files.isRegularFile(file)) return null;
+
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getInt() != key.rows) return null;
+
+            byte[] strategy = new byte[buf.getShort()];
+            buf.get(strategy);
+            int teamCount = buf.getInt();
+            if (teamCount < 0 || teamCount > key.rows) return null;
+            int[][] members = new int[teamCount][];
+            for (int t = 0; t < members.length; t++) {
+                int size = buf.getInt();
+                if (size < 0 || size > key.rows) return null;
+                members[t] = new int[size];
+                for (int m = 0; m < members[t].length; m++) {
+                    int position = buf.getInt();
+                    if (position < 0 || position >= key.rows) return null;
+                    members[t][m] = position;
+                }
+            }
+            return new Entry(members, new String(strategy, StandardCharsets.UTF_8));
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // Damaged: treat it like a missing entry
+            return null;
+        }
+    }
+
+    // Written under a temporary name and then moved into place
+    private void write(Key key, Entry entry) throws IOException {
+        Files.createDirectories(directory);
+        Path file = pathFor(key);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(key.rows);
+            byte[] strategy = entry.strategy.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(strategy.length);
+            out.write(strategy);
+            out.writeInt(entry.members.length);
+            for (int[] team : entry.members) {
+                out.writeInt(team.length);
+                for (int position : team) out.writeInt(position);
+            }
+        }
+
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Keep the maxEntries most recently written entry files
+    private void prune() {
+        if (!Files.isDirectory(directory)) return;
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) files.add(file);
+            files.sort((a, b) -> Long.compare(modified(b), modified(a)));
+            for (int i = maxEntries; i < files.size(); i++) {
+                Files.deleteIfExists(files.get(i));
+            }
+        } catch (IOException e) {
+            System.out.println("Could not clean up cached teams: " + e.getMessage());
+        }
+    }
+
+    private static long modified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Team rules and scoring weights used while forming and maintaining teams
+ * (see FormationState for how each one is applied, and TeamRules for how
+ * the caps are compiled).
+ *
+ * Profiles can be loaded from a properties file with load. Keys without a
+ * prefix set the base profile and "<profile>.<key>" overrides them for one
+ * profile; anything not set keeps its DEFAULT value. For example
+ *
+ *   maxSameGamePerTeam=2
+ *   strict.maxThinkersPerTeam=1
+ *   strict.maxSameRolePerTeam=2
+ */
+public class FormationLimits {
+
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    public static final FormationLimits DEFAULT = new FormationLimits(2, 2, 3, 10, 3);
+
+    private static final Set<String> KEYS = Set.of("maxSameGamePerTeam", "maxThinkersPerTeam",
+            "maxSameRolePerTeam", "desiredDistinctRoles", "roleBonus", "balancedBonus");
+
+    private final int maxSameGamePerTeam;
+    private final int maxThinkersPerTeam;
+    private final int maxSameRolePerTeam;
+    private final int desiredDistinctRoles;
+    private final int roleBonus;
+    private final int balancedBonus;
+
+    public FormationLimits(int maxSameGamePerTeam, int maxThinkersPerTeam, int desiredDistinctRoles,
+                           int roleBonus, int balancedBonus) {
+        this(maxSameGamePerTeam, maxThinkersPerTeam, NO_LIMIT, desiredDistinctRoles, roleBonus, balancedBonus);
+    }
+
+    public FormationLimits(int maxSameGamePerTeam, int maxThinkersPerTeam, int maxSameRolePerTeam,
+                           int desiredDistinctRoles, int roleBonus, int balancedBonus) {
+        if (maxSameGamePerTeam < 1) {
+            throw new IllegalArgumentException("At least one player per game must be allowed in a team.");
+        }
+        if (maxThinkersPerTeam < 1) {
+            throw new IllegalArgumentException("At least one thinker must be allowed in a team.");
+        }
+        if (maxSameRolePerTeam < 1) {
+            throw new IllegalArgumentException("At least one player per role must be allowed in a team.");
+        }
+        if (desiredDistinctRoles < 0 || roleBonus < 0 || balancedBonus < 0) {
+            throw new IllegalArgumentException("Role targets and bonuses cannot be negative.");
+        }
+        this.maxSameGamePerTeam = maxSameGamePerTeam;
+        this.maxThinkersPerTeam = maxThinkersPerTeam;
+        this.maxSameRolePerTeam = maxSameRolePerTeam;
+        this.desiredDistinctRoles = desiredDistinctRoles;
+        this.roleBonus = roleBonus;
+        this.balancedBonus = balancedBonus;
+    }
+
+    /**
+     * The named profile from a properties file (null or "" for the base
+     * profile). Caps may be given as "none" for no limit. Unknown keys and
+     * values that are not whole numbers are rejected.
+     */
+    public static FormationLimits load(Path file, String profile) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        String prefix = (profile == null || profile.isEmpty()) ? "" : profile + ".";
+        boolean profileFound = prefix.isEmpty();
+        for (String name : properties.stringPropertyNames()) {
+            String key = name.substring(name.lastIndexOf('.') + 1);
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown rule '" + name + "' in " + file);
+            }
+            if (!prefix.isEmpty() && name.startsWith(prefix)) profileFound = true;
+        }
+        if (!profileFound) {
+            throw new IllegalArgumentException("No profile '" + profile + "' in " + file);
+        }
+
+        return new FormationLimits(
+                value(properties, prefix, "maxSameGamePerTeam", DEFAULT.maxSameGamePerTeam),
+                value(properties, prefix, "maxThinkersPerTeam", DEFAULT.maxThinkersPerTeam),
+                value(properties, prefix, "maxSameRolePerTeam", DEFAULT.maxSameRolePerTeam),
+                value(properties, prefix, "desiredDistinctRoles", DEFAULT.desiredDistinctRoles),
+                value(properties, prefix, "roleBonus", DEFAULT.roleBonus),
+                value(properties, prefix, "balancedBonus", DEFAULT.balancedBonus));
+    }
+
+    private static int value(Properties properties, String prefix, String key, int defaultValue) {
+        String value = properties.getProperty(prefix + key, properties.getProperty(key));
+        if (value == null) return defaultValue;
+
+        value = value.trim();
+        if (value.equalsIgnoreCase("none")) return NO_LIMIT;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a whole number or none, not '" + value + "'");
+        }
+    }
+
+    public int getMaxSameGamePerTeam() {
+        return maxSameGamePerTeam;
+    }
+
+    public int getMaxThinkersPerTeam() {
+        return maxThinkersPerTeam;
+    }
+
+    /**
+     * Members sharing one (non-empty) role a team may hold; NO_LIMIT by default.
+     */
+    public int getMaxSameRolePerTeam() {
+        return maxSameRolePerTeam;
+    }
+
+    public int getDesiredDistinctRoles() {
+        return desiredDistinctRoles;
+    }
+
+    public int getRoleBonus() {
+        return roleBonus;
+    }
+
+    public int getBalancedBonus() {
+        return balancedBonus;
+    }
+
+    @Override
+    public String toString() {
+        return "maxSameGamePerTeam=" + maxSameGamePerTeam
+                + ", maxThinkersPerTeam=" + maxThinkersPerTeam
+                + ", maxSameRolePerTeam=" + ((maxSameRolePerTeam == NO_LIMIT) ? "none" : maxSameRolePerTeam)
+                + ", desiredDistinctRoles=" + desiredDistinctRoles
+                + ", roleBonus=" + roleBonus
+                + ", balancedBonus=" + balancedBonus;
+    }
+}
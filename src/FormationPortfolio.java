@@ -0,0 +1,298 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Anytime team formation: races variants of the builder on a ForkJoinPool
+ * for a fixed time and keeps the best feasible result seen so far.
+ *
+ * Variant 0 is the plain greedy build and variant 1 the min-cost one. The
+ * others alternate the two strategies over a shuffled roster, which
+ * changes how equal-skill participants are tie-broken. Each variant is
+ * offered as formed and again after a TeamOptimizer polish of a fixed
+ * number of swap steps. Everything a variant does follows from the seed
+ * and its index, and the winner is picked by score, then variant index, so
+ * a run that gets through the same variants always returns the same teams
+ * whatever the timing or core count.
+ *
+ * At the deadline (or on an interrupt) run returns the best result so far
+ * straight away. Variants not started are cancelled; one already forming
+ * finishes in the background and is dropped.
+ */
+public class FormationPortfolio {
+
+    public static final int DEFAULT_MAX_VARIANTS = 64;
+
+    private static final long POLISH_STEPS_PER_PARTICIPANT = 200;
+
+    private static final Metrics.Counter VARIANTS = Metrics.counter("portfolio.variants");
+
+    /**
+     * The winning teams and how they were found.
+     */
+    public static final class Result {
+        private final List<Team> teams;
+        private final TeamBuilder builder;
+        private final String variant;
+        private final int variantsFinished;
+        private final boolean complete;
+
+        private Result(List<Team> teams, TeamBuilder builder, String variant, int variantsFinished, boolean complete) {
+            this.teams = teams;
+            this.builder = builder;
+            this.variant = variant;
+            this.variantsFinished = variantsFinished;
+            this.complete = complete;
+        }
+
+        public List<Team> getTeams() {
+            return teams;
+        }
+
+        /**
+         * Builder of the winning variant, for maintaining its teams.
+         */
+        public TeamBuilder getBuilder() {
+            return builder;
+        }
+
+        public String getVariant() {
+            return variant;
+        }
+
+        public int getVariantsFinished() {
+            return variantsFinished;
+        }
+
+        /**
+         * False when the deadline or an interrupt stopped the run early.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    private final TeamBuilder greedy;
+    private final TeamBuilder minCost;
+    private final long seed;
+    private final int maxVariants;
+
+    public FormationPortfolio(int teamSize, long seed) {
+        this(teamSize, FormationLimits.DEFAULT, seed, DEFAULT_MAX_VARIANTS);
+    }
+
+    public FormationPortfolio(int teamSize, FormationLimits limits, long seed, int maxVariants) {
+        if (maxVariants < 1) {
+            throw new IllegalArgumentException("At least one variant must be run.");
+        }
+        this.greedy = new TeamBuilder(teamSize, limits, FormationStrategy.greedy());
+        this.minCost = new TeamBuilder(teamSize, limits, FormationStrategy.minCost());
+        this.seed = seed;
+        this.maxVariants = maxVariants;
+    }
+
+    /**
+     * Runs variants for up to budgetMillis and returns the best teams
+     * found (empty when no variant finished in time).
+     */
+    public Result run(List<Participant> participants, long budgetMillis, ForkJoinPool pool) {
+        if (participants == null || participants.isEmpty()) {
+            return new Result(new ArrayList<>(), greedy, "none", 0, true);
+        }
+
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+        ParticipantStore store = ParticipantStore.of(participants);
+        AtomicInteger nextVariant = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        AtomicReference<Candidate> best = new AtomicReference<>();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        int workers = Math.min(Math.max(1, pool.getParallelism()), maxVariants);
+        CountDownLatch done = new CountDownLatch(workers);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+
+        for (int w = 0; w < workers; w++) {
+            tasks.add(pool.submit(() -> {
+                try {
+                    int variant;
+                    while (System.nanoTime() < deadline && (variant = nextVariant.getAndIncrement()) < maxVariants) {
+                        runVariant(variant, participants, store, deadline, best);
+                        finished.incrementAndGet();
+                        VARIANTS.increment();
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }));
+        }
+
+        boolean complete;
+        try {
+            complete = done.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            complete = false;
+        }
+        if (!complete) {
+            nextVariant.set(maxVariants);
+            for (ForkJoinTask<?> task : tasks) {
+                task.cancel(true);
+            }
+        }
+
+        Candidate winner = best.get();
+        if (winner == null) {
+            if (failure.get() != null) {
+                throw new IllegalStateException("Team formation failed", failure.get());
+            }
+            return new Result(new ArrayList<>(), greedy, "none", finished.get(), complete);
+        }
+        List<Participant> order = winner.order;
+        return new Result(winner.formation.toTeams(order::get), winner.builder, winner.describe(),
+                finished.get(), complete);
+    }
+
+    /**
+     * run on the search pool shared with TeamOptimizer.
+     */
+    public Result run(List<Participant> participants, long budgetMillis) {
+        return run(participants, budgetMillis, TeamOptimizer.searchPool());
+    }
+
+    private void runVariant(int variant, List<Participant> participants, ParticipantStore store, long deadline,
+                            AtomicReference<Candidate> best) {
+        TeamBuilder builder = (variant % 2 == 0) ? greedy : minCost;
+        SplittableRandom random = new SplittableRandom(seed + variant * 0x9E3779B97F4A7C15L);
+
+        List<Participant> order = participants;
+        if (variant >= 2) {
+            order = new ArrayList<>(participants);
+            for (int i = order.size() - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                order.set(i, order.set(j, order.get(i)));
+            }
+            store = ParticipantStore.of(order);
+        }
+
+        Formation formation = builder.form(store);
+        offer(best, Candidate.score(variant, false, builder, order, store, formation));
+
+        long steps = POLISH_STEPS_PER_PARTICIPANT * formation.getPlacedCount();
+        Formation polished = new TeamOptimizer(builder.getLimits())
+                .polish(store, formation, random.nextLong(), steps, deadline);
+        if (polished != null && polished != formation) {
+            offer(best, Candidate.score(variant, true, builder, order, store, polished));
+        }
+    }
+
+    private static void offer(AtomicReference<Candidate> best, Candidate candidate) {
+        if (candidate != null) {
+            best.accumulateAndGet(candidate, (a, b) -> (a == null || b.isBetterThan(a)) ? b : a);
+        }
+    }
+
+    /**
+     * A finished formation and its score: participants placed (more is
+     * better), then spread of team skill totals (teamCount times the sum
+     * of squared totals minus the squared overall total, lower is better),
+     * then teams with the desired number of distinct roles (more is better).
+     */
+    private static final class Candidate {
+        final int variant;
+        final boolean polished;
+        final TeamBuilder builder;
+        final List<Participant> order;
+        final Formation formation;
+        final int placed;
+        final long spread;
+        final int roleTeams;
+
+        private Candidate(int variant, boolean polished, TeamBuilder builder, List<Participant> order,
+                          Formation formation, long spread, int roleTeams) {
+            this.variant = variant;
+            this.polished = polished;
+            this.builder = builder;
+            this.order = order;
+            this.formation = formation;
+            this.placed = formation.getPlacedCount();
+            this.spread = spread;
+            this.roleTeams = roleTeams;
+        }
+
+        // Null when the formation breaks a team rule
+        static Candidate score(int variant, boolean polished, TeamBuilder builder, List<Participant> order,
+                               ParticipantStore store, Formation formation) {
+            FormationLimits limits = builder.getLimits();
+            int teamCount = formation.getTeamCount();
+            int gameStride = store.gameCodeCount();
+            int roleStride = store.roleCodeCount();
+            int emptyRole = store.emptyRoleCode();
+
+            int[] sizes = new int[teamCount];
+            int[] leaders = new int[teamCount];
+            int[] thinkers = new int[teamCount];
+            long[] totals = new long[teamCount];
+            int[] games = new int[teamCount * gameStride];
+            int[] roles = new int[teamCount * roleStride];
+            int[] distinctRoles = new int[teamCount];
+
+            for (int i = 0; i < formation.getPlacedCount(); i++) {
+                int row = formation.getPlacedRow(i);
+                int team = formation.getTeamOf(row);
+                sizes[team]++;
+                totals[team] += store.skill(row);
+
+                int type = store.typeCode(row);
+                if (type == CodeDictionary.TYPE_LEADER) leaders[team]++;
+                if (type == CodeDictionary.TYPE_THINKER) thinkers[team]++;
+
+                int game = store.gameCode(row);
+                if (game >= 0 && ++games[team * gameStride + game] > limits.getMaxSameGamePerTeam()) {
+                    return null;
+                }
+                int role = store.roleCode(row);
+                if (role >= 0 && role != emptyRole) {
+                    int count = ++roles[team * roleStride + role];
+                    if (count == 1) distinctRoles[team]++;
+                    if (count > limits.getMaxSameRolePerTeam()) return null;
+                }
+            }
+
+            long sumOfSquares = 0;
+            long total = 0;
+            int roleTeams = 0;
+            for (int team = 0; team < teamCount; team++) {
+                if (sizes[team] > builder.getTeamSize() || leaders[team] == 0
+                        || thinkers[team] > limits.getMaxThinkersPerTeam()) {
+                    return null;
+                }
+                sumOfSquares += totals[team] * totals[team];
+                total += totals[team];
+                if (distinctRoles[team] >= limits.getDesiredDistinctRoles()) roleTeams++;
+            }
+
+            return new Candidate(variant, polished, builder, order, formation,
+                    teamCount * sumOfSquares - total * total, roleTeams);
+        }
+
+        boolean isBetterThan(Candidate other) {
+            if (placed != other.placed) return placed > other.placed;
+            if (spread != other.spread) return spread < other.spread;
+            if (roleTeams != other.roleTeams) return roleTeams > other.roleTeams;
+            if (variant != other.variant) return variant < other.variant;
+            return polished && !other.polished;
+        }
+
+        String describe() {
+            return builder.getStrategy() + " #" + variant + (polished ? " (polished)" : "");
+        }
+    }
+}
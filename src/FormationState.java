@@ -0,0 +1,435 @@
+import java.util.Arrays;
+
+/**
+ * Running per-team state used by TeamBuilder while it forms teams from a
+ * ParticipantStore. Teams are numbered 0..teamCount-1 and every counter the
+ * team rules need is kept in primitive arrays.
+ *
+ * The limits are compiled into TeamRules, and each team keeps a state word
+ * with a bit for every cap it has reached, so whether a team can take a row
+ * is one AND of that word with the row's mask. The role bonus works the
+ * same way through a mask of the roles each team still wants. The open
+ * teams are then also kept in an {@link OpenTeamIndex}. When the known
+ * games and roles need more than 64 bits, the counters are checked one by
+ * one and lookups scan the teams.
+ *
+ * Codes the store gives out later are taken on with cover(): the counters
+ * grow by doubling their stride and the rules get the next free bits, so
+ * a newcomer with a new game or role never costs a replay of the teams.
+ */
+public class FormationState {
+
+    // Teams turned down by bestFor, per rule (full teams are not counted)
+    static final Metrics.Counter GAME_LIMIT_REJECTS = Metrics.counter("form.rejected.gameLimit");
+    static final Metrics.Counter THINKER_LIMIT_REJECTS = Metrics.counter("form.rejected.thinkerLimit");
+    static final Metrics.Counter ROLE_LIMIT_REJECTS = Metrics.counter("form.rejected.roleLimit");
+
+    private final ParticipantStore store;
+    private final int teamCount;
+    private final int teamSize;
+    private final FormationLimits limits;
+    private TeamRules rules;               // null when the codes do not fit in 64 bits
+    private final int maxSameGamePerTeam;
+    private final int maxThinkersPerTeam;
+    private final int maxSameRolePerTeam;
+    private final int desiredDistinctRoles;
+    private final int roleBonus;
+    private final int balancedBonus;
+
+    private int knownGames;                // codes tracked so far
+    private int knownRoles;
+    private int gameStride;                // counter slots per team, at least the known codes
+    private int roleStride;
+    private final int emptyRole;
+
+    private final int[] sizes;
+    private final int[] skills;
+    private final int[] thinkers;
+    private final int[] distinctRoles;
+    private final long[] roleMasks;        // bit per role code (codes < 64)
+    private final long[] words;            // TeamRules state word
+    private final long[] wantedRoles;      // roles that earn the role bonus (codes < 64)
+    private int[] gameCounts;              // [team * gameStride + game]
+    private int[] roleCounts;              // [team * roleStride + role]
+    private final boolean[] retired;       // dissolved teams, never open again
+
+    private OpenTeamIndex index;
+
+    public FormationState(ParticipantStore store, int teamCount, int teamSize, FormationLimits limits) {
+        this.store = store;
+        this.teamCount = teamCount;
+        this.teamSize = teamSize;
+        this.limits = limits;
+        this.maxSameGamePerTeam = limits.getMaxSameGamePerTeam();
+        this.maxThinkersPerTeam = limits.getMaxThinkersPerTeam();
+        this.maxSameRolePerTeam = limits.getMaxSameRolePerTeam();
+        this.desiredDistinctRoles = limits.getDesiredDistinctRoles();
+        this.roleBonus = limits.getRoleBonus();
+        this.balancedBonus = limits.getBalancedBonus();
+
+        this.knownGames = store.gameCodeCount();
+        this.knownRoles = store.roleCodeCount();
+        this.gameStride = knownGames;
+        this.roleStride = knownRoles;
+        this.emptyRole = store.emptyRoleCode();
+        this.rules = (roleStride <= 64) ? TeamRules.compile(limits, gameStride, roleStride, emptyRole) : null;
+
+        sizes = new int[teamCount];
+        skills = new int[teamCount];
+        thinkers = new int[teamCount];
+        distinctRoles = new int[teamCount];
+        roleMasks = new long[teamCount];
+        words = new long[teamCount];
+        wantedRoles = new long[teamCount];
+        gameCounts = new int[teamCount * gameStride];
+        roleCounts = new int[teamCount * roleStride];
+        retired = new boolean[teamCount];
+
+        if (desiredDistinctRoles > 0) {
+            Arrays.fill(wantedRoles, -1L);
+        }
+
+        if (rules != null) {
+            index = new OpenTeamIndex(this);
+            for (int t = 0; t < teamCount; t++) {
+                index.insert(t);
+            }
+        } else {
+            index = null;
+        }
+    }
+
+    public ParticipantStore getStore() {
+        return store;
+    }
+
+    public int getTeamCount() {
+        return teamCount;
+    }
+
+    public int getTeamSize() {
+        return teamSize;
+    }
+
+    public int getMaxSameGamePerTeam() {
+        return maxSameGamePerTeam;
+    }
+
+    public int getMaxThinkersPerTeam() {
+        return maxThinkersPerTeam;
+    }
+
+    public int getMaxSameRolePerTeam() {
+        return maxSameRolePerTeam;
+    }
+
+    public FormationLimits getLimits() {
+        return limits;
+    }
+
+    public int getDesiredDistinctRoles() {
+        return desiredDistinctRoles;
+    }
+
+    public int getRoleBonus() {
+        return roleBonus;
+    }
+
+    public int getBalancedBonus() {
+        return balancedBonus;
+    }
+
+    public int size(int team) {
+        return sizes[team];
+    }
+
+    public int totalSkill(int team) {
+        return skills[team];
+    }
+
+    public int thinkers(int team) {
+        return thinkers[team];
+    }
+
+    public int distinctRoles(int team) {
+        return distinctRoles[team];
+    }
+
+    public long roleMask(int team) {
+        return roleMasks[team];
+    }
+
+    /**
+     * The team's TeamRules state word (0 when the rules are not compiled).
+     */
+    public long word(int team) {
+        return words[team];
+    }
+
+    /**
+     * Roles that would earn the team the role bonus (codes below 64).
+     */
+    public long wantedRoles(int team) {
+        return wantedRoles[team];
+    }
+
+    TeamRules getRules() {
+        return rules;
+    }
+
+    public int gameCount(int team, int game) {
+        return (game >= 0 && game < gameStride) ? gameCounts[team * gameStride + game] : 0;
+    }
+
+    public boolean hasRole(int team, int role) {
+        return role >= 0 && role < roleStride && roleCounts[team * roleStride + role] > 0;
+    }
+
+    public boolean isOpen(int team) {
+        return sizes[team] < teamSize && !retired[team];
+    }
+
+    /**
+     * True when the row's game and role codes are tracked by this state
+     * (codes the store gives out later are not, until cover is called).
+     */
+    public boolean covers(int row) {
+        return store.gameCode(row) < knownGames && store.roleCode(row) < knownRoles;
+    }
+
+    /**
+     * Track every game and role code the store has given out, so the row
+     * can be placed under the rules.
+     */
+    public void cover(int row) {
+        if (covers(row)) return;
+
+        int games = store.gameCodeCount();
+        int roles = store.roleCodeCount();
+        if (games > gameStride) {
+            int wider = Math.max(games, gameStride * 2);
+            gameCounts = restride(gameCounts, gameStride, wider);
+            gameStride = wider;
+        }
+        if (roles > roleStride) {
+            int wider = Math.max(roles, roleStride * 2);
+            roleCounts = restride(roleCounts, roleStride, wider);
+            roleStride = wider;
+        }
+        if (rules != null) {
+            rules = (roles <= 64) ? rules.extend(games, roles) : null;
+            if (rules == null) {
+                index = null;
+            }
+        }
+        knownGames = games;
+        knownRoles = roles;
+    }
+
+    private int[] restride(int[] counts, int stride, int wider) {
+        int[] grown = new int[teamCount * wider];
+        for (int t = 0; t < teamCount; t++) {
+            System.arraycopy(counts, t * stride, grown, t * wider, stride);
+        }
+        return grown;
+    }
+
+    /**
+     * True when the team is open and taking the row keeps it within the
+     * game, thinker and role limits.
+     */
+    public boolean canTake(int team, int row) {
+        if (rules != null) {
+            return (words[team] & maskOf(row)) == 0;
+        }
+        if (!isOpen(team)) return false;
+        if (gameCount(team, store.gameCode(row)) >= maxSameGamePerTeam) return false;
+        if (roleCount(team, store.roleCode(row)) >= maxSameRolePerTeam) return false;
+        return store.typeCode(row) != CodeDictionary.TYPE_THINKER
+                || thinkers[team] < maxThinkersPerTeam;
+    }
+
+    long maskOf(int row) {
+        return rules.maskOf(store.gameCode(row), store.roleCode(row), store.typeCode(row));
+    }
+
+    // Members sharing a capped (non-empty) role
+    private int roleCount(int team, int role) {
+        return (role >= 0 && role < roleStride && role != emptyRole) ? roleCounts[team * roleStride + role] : 0;
+    }
+
+    /**
+     * Add a store row to a team and update its counters (and index entry).
+     */
+    public void place(int team, int row) {
+        if (index != null) {
+            index.remove(team);
+        }
+
+        int game = store.gameCode(row);
+        if (game >= 0) {
+            gameCounts[team * gameStride + game]++;
+        }
+
+        int role = store.roleCode(row);
+        if (role >= 0 && roleCounts[team * roleStride + role]++ == 0) {
+            if (role < 64) roleMasks[team] |= 1L << role;
+            if (role != emptyRole) distinctRoles[team]++;
+        }
+
+        if (store.typeCode(row) == CodeDictionary.TYPE_THINKER) {
+            thinkers[team]++;
+        }
+
+        skills[team] += store.skill(row);
+        sizes[team]++;
+        update(team, game, role);
+
+        if (index != null && isOpen(team)) {
+            index.insert(team);
+        }
+    }
+
+    /**
+     * Take a store row back out of a team (the reverse of place).
+     */
+    public void remove(int team, int row) {
+        if (index != null) {
+            index.remove(team);
+        }
+
+        int game = store.gameCode(row);
+        if (game >= 0) {
+            gameCounts[team * gameStride + game]--;
+        }
+
+        int role = store.roleCode(row);
+        if (role >= 0 && --roleCounts[team * roleStride + role] == 0) {
+            if (role < 64) roleMasks[team] &= ~(1L << role);
+            if (role != emptyRole) distinctRoles[team]--;
+        }
+
+        if (store.typeCode(row) == CodeDictionary.TYPE_THINKER) {
+            thinkers[team]--;
+        }
+
+        skills[team] -= store.skill(row);
+        sizes[team]--;
+        update(team, game, role);
+
+        if (index != null && isOpen(team)) {
+            index.insert(team);
+        }
+    }
+
+    // Refresh the state word bits a change of this game and role can touch, and the wanted roles
+    private void update(int team, int game, int role) {
+        wantedRoles[team] = (distinctRoles[team] < desiredDistinctRoles) ? ~roleMasks[team] : 0;
+        if (rules == null) return;
+
+        long word = words[team] & ~(TeamRules.FULL | TeamRules.HAS_THINKER | rules.thinkerBit()
+                | rules.gameBit(game) | rules.roleBit(role));
+        if (!isOpen(team)) word |= TeamRules.FULL;
+        if (thinkers[team] > 0) word |= TeamRules.HAS_THINKER;
+        if (thinkers[team] >= maxThinkersPerTeam) word |= rules.thinkerBit();
+        if (gameCount(team, game) >= maxSameGamePerTeam) word |= rules.gameBit(game);
+        if (roleCount(team, role) >= maxSameRolePerTeam) word |= rules.roleBit(role);
+        words[team] = word;
+    }
+
+    /**
+     * Close a team for good; it is never offered by the lookups again.
+     */
+    public void retire(int team) {
+        if (index != null) {
+            index.remove(team);
+        }
+        retired[team] = true;
+        words[team] |= TeamRules.FULL;
+    }
+
+    /**
+     * Open team with no thinker yet that can take the thinker row and has
+     * the lowest total skill (-1 if none).
+     */
+    public int bestForFirstThinker(int row) {
+        if (index != null) {
+            return index.bestForFirstThinker(maskOf(row));
+        }
+
+        int best = -1;
+        int bestScore = Integer.MAX_VALUE;
+        for (int t = 0; t < teamCount; t++) {
+            if (thinkers[t] > 0 || !canTake(t, row)) continue;
+
+            if (skills[t] < bestScore) {
+                bestScore = skills[t];
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Open team with the lowest score that passes the game, thinker and
+     * role limits for this row (-1 if none).
+     */
+    public int bestFor(int row) {
+        if (index != null) {
+            return index.bestFor(row);
+        }
+
+        int game = store.gameCode(row);
+        int role = store.roleCode(row);
+        boolean thinker = store.typeCode(row) == CodeDictionary.TYPE_THINKER;
+
+        int best = -1;
+        int bestScore = Integer.MAX_VALUE;
+        int gameRejects = 0;
+        int thinkerRejects = 0;
+        int roleRejects = 0;
+        for (int t = 0; t < teamCount; t++) {
+
+            if (!isOpen(t)) continue;
+
+            if (game >= 0 && gameCount(t, game) >= maxSameGamePerTeam) {
+                gameRejects++;
+                continue;
+            }
+
+            if (thinker && thinkers[t] >= maxThinkersPerTeam) {
+                thinkerRejects++;
+                continue;
+            }
+
+            if (roleCount(t, role) >= maxSameRolePerTeam) {
+                roleRejects++;
+                continue;
+            }
+
+            int score = skills[t];
+
+            if (role >= 0 && distinctRoles[t] < desiredDistinctRoles && !hasRole(t, role)) {
+                score -= roleBonus;
+            }
+
+            if (store.typeCode(row) == CodeDictionary.TYPE_BALANCED) {
+                score -= balancedBonus;
+            }
+
+            if (score < bestScore) {
+                bestScore = score;
+                best = t;
+            }
+        }
+        countRejects(gameRejects, thinkerRejects, roleRejects);
+        return best;
+    }
+
+    // Added once per lookup rather than once per team
+    static void countRejects(int gameRejects, int thinkerRejects, int roleRejects) {
+        if (gameRejects > 0) GAME_LIMIT_REJECTS.add(gameRejects);
+        if (thinkerRejects > 0) THINKER_LIMIT_REJECTS.add(thinkerRejects);
+        if (roleRejects > 0) ROLE_LIMIT_REJECTS.add(roleRejects);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * How TeamBuilder seeds its teams. Team i starts with the i-th strongest
+ * leader; the strategy then gives each team its first thinker, and the
+ * rest of the roster is placed by the shared greedy pass.
+ *
+ * greedy() places thinkers one by one, strongest first, into the open team
+ * with the lowest total skill. minCost() pairs leaders with thinkers by
+ * solving a min-cost assignment over the whole event (see MinCostSeeding),
+ * so the pairing does not depend on the order thinkers are looked at.
+ */
+public interface FormationStrategy {
+
+    // choose() picks min-cost seeding from this roster size and time budget on,
+    // and for rosters this large regardless (there it beats the greedy's
+    // thinker-by-thinker placement on time too)
+    int MIN_COST_MIN_PARTICIPANTS = 1_000;
+    long MIN_COST_MIN_BUDGET_MILLIS = 100;
+    int MIN_COST_ALWAYS_PARTICIPANTS = 100_000;
+
+    interface PlacementSink {
+        void placed(int row, int team);
+    }
+
+    /**
+     * Give teams their first thinker. Team i of state already holds
+     * leaders[i]; thinkers are sorted by descending skill. Every placement
+     * goes into state and is reported to sink. Returns the thinkers left
+     * for the greedy pass, still by descending skill.
+     */
+    int[] seed(FormationState state, int[] leaders, int[] thinkers, PlacementSink sink);
+
+    static FormationStrategy greedy() {
+        return GreedySeeding.INSTANCE;
+    }
+
+    static FormationStrategy minCost() {
+        return MinCostSeeding.INSTANCE;
+    }
+
+    /**
+     * The strategy called name ("greedy" or "min-cost", as printed by
+     * toString).
+     */
+    static FormationStrategy named(String name) {
+        if (greedy().toString().equals(name)) return greedy();
+        if (minCost().toString().equals(name)) return minCost();
+        throw new IllegalArgumentException("strategy must be greedy or min-cost");
+    }
+
+    /**
+     * Min-cost seeding for events of at least MIN_COST_MIN_PARTICIPANTS when
+     * the caller can spend MIN_COST_MIN_BUDGET_MILLIS or more on formation,
+     * and for every event of MIN_COST_ALWAYS_PARTICIPANTS or more; the
+     * greedy otherwise.
+     */
+    static FormationStrategy choose(int participants, long budgetMillis) {
+        if (participants >= MIN_COST_ALWAYS_PARTICIPANTS) return minCost();
+        return (participants >= MIN_COST_MIN_PARTICIPANTS && budgetMillis >= MIN_COST_MIN_BUDGET_MILLIS)
+                ? minCost() : greedy();
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.Arrays;
+
+/**
+ * The original seeding: the strongest thinkers, one per team, each into
+ * the open team without a thinker that has the lowest total skill (and
+ * can take them).
+ */
+final class GreedySeeding implements FormationStrategy {
+
+    static final GreedySeeding INSTANCE = new GreedySeeding();
+
+    private GreedySeeding() {
+    }
+
+    @Override
+    public int[] seed(FormationState state, int[] leaders, int[] thinkers, PlacementSink sink) {
+        int teamCount = state.getTeamCount();
+
+        int thinkerIndex = 0;
+        for (; thinkerIndex < thinkers.length && thinkerIndex < teamCount; thinkerIndex++) {
+            int thinker = thinkers[thinkerIndex];
+            int bestTeam = state.bestForFirstThinker(thinker);
+            if (bestTeam >= 0) {
+                state.place(bestTeam, thinker);
+                sink.placed(thinker, bestTeam);
+            }
+        }
+        return Arrays.copyOfRange(thinkers, thinkerIndex, thinkers.length);
+    }
+
+    @Override
+    public String toString() {
+        return "greedy";
+    }
+}
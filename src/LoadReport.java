@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Outcome of one participant CSV load or registration feed: header status,
+ * row counts, and the rejected rows grouped by reason (all line numbers,
+ * plus the text of the first few rows per reason).
+ *
+ * Nothing is printed while loading; call {@link #summary()},
+ * {@link #print(PrintStream)} or {@link #writeAsync(Path)} when needed.
+ */
+public class LoadReport {
+
+    public enum Reason {
+        TOO_FEW_COLUMNS("not enough columns"),
+        MISSING_FIELDS("missing required fields"),
+        INVALID_SKILL("invalid skill value"),
+        SKILL_OUT_OF_RANGE("invalid skill range (1–10)"),
+        INVALID_SCORE("invalid personality score"),
+        INVALID_RECORD("unreadable record"),
+        DUPLICATE_ID("duplicate ID"),
+        DUPLICATE_EMAIL("duplicate email");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    public static final int DEFAULT_MAX_EXAMPLES = 5;
+
+    private static final Metrics.Counter ROWS_READ = Metrics.counter("rows.read");
+    private static final Metrics.Counter ROWS_LOADED = Metrics.counter("rows.loaded");
+    private static final Metrics.Counter[] ROWS_REJECTED = new Metrics.Counter[Reason.values().length];
+
+    static {
+        for (Reason r : Reason.values()) {
+            ROWS_REJECTED[r.ordinal()] = Metrics.counter("rows.rejected." + r.name().toLowerCase());
+        }
+    }
+
+    private final String source;
+    private final int maxExamples;
+
+    private String headerError;
+    private long rowsRead;
+    private long rowsLoaded;
+
+    private final Map<Reason, LineList> lines = new EnumMap<>(Reason.class);
+    private final Map<Reason, List<String>> examples = new EnumMap<>(Reason.class);
+
+    public LoadReport(String source) {
+        this(source, DEFAULT_MAX_EXAMPLES);
+    }
+
+    public LoadReport(String source, int maxExamples) {
+        this.source = source;
+        this.maxExamples = maxExamples;
+        for (Reason r : Reason.values()) {
+            lines.put(r, new LineList());
+            examples.put(r, new ArrayList<>());
+        }
+    }
+
+    public int getMaxExamples() {
+        return maxExamples;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public boolean isHeaderValid() {
+        return headerError == null;
+    }
+
+    public String getHeaderError() {
+        return headerError;
+    }
+
+    /**
+     * Add this report's row counts (per rejection reason too) to the
+     * process metrics; called once a load or feed is finished.
+     */
+    void addToMetrics() {
+        ROWS_READ.add(rowsRead);
+        ROWS_LOADED.add(rowsLoaded);
+        for (Reason r : Reason.values()) {
+            int count = getCount(r);
+            if (count > 0) ROWS_REJECTED[r.ordinal()].add(count);
+        }
+    }
+
+    void setHeaderError(String headerError) {
+        this.headerError = headerError;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsLoaded() {
+        return rowsLoaded;
+    }
+
+    public long getRejectedCount() {
+        return rowsRead - rowsLoaded;
+    }
+
+    public int getCount(Reason reason) {
+        return lines.get(reason).size;
+    }
+
+    /**
+     * File line numbers (header is line 1) of the rows rejected for a reason.
+     */
+    public int[] getLines(Reason reason) {
+        LineList list = lines.get(reason);
+        return Arrays.copyOf(list.lines, list.size);
+    }
+
+    /**
+     * Up to maxExamples rejected rows for a reason, as "line N: text".
+     */
+    public List<String> getExamples(Reason reason) {
+        return Collections.unmodifiableList(examples.get(reason));
+    }
+
+    void addRows(long read, long loaded) {
+        rowsRead += read;
+        rowsLoaded += loaded;
+    }
+
+    void addRejected(Reason reason, int line) {
+        lines.get(reason).add(line);
+    }
+
+    void addExample(Reason reason, int line, String text) {
+        if (examples.get(reason).size() < maxExamples) {
+            examples.get(reason).add("line " + line + ": " + text);
+        }
+    }
+
+    // An example already in the "line N: text" form (e.g. read back from a snapshot)
+    void addFormattedExample(Reason reason, String example) {
+        if (examples.get(reason).size() < maxExamples) {
+            examples.get(reason).add(example);
+        }
+    }
+
+    /**
+     * One line, e.g. "Loaded 98 of 100 rows (2 skipped: missing required fields=2)".
+     */
+    public String summary() {
+        if (!isHeaderValid()) {
+            return "CSV verification failed: " + headerError;
+        }
+
+        StringBuilder sb = new StringBuilder()
+                .append("Loaded ").append(rowsLoaded).append(" of ").append(rowsRead).append(" rows");
+        if (getRejectedCount() > 0) {
+            sb.append(" (").append(getRejectedCount()).append(" skipped:");
+            String separator = " ";
+            for (Reason r : Reason.values()) {
+                if (getCount(r) == 0) continue;
+                sb.append(separator).append(r.getDescription()).append('=').append(getCount(r));
+                separator = ", ";
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    public void print(PrintStream out) {
+        out.println(summary());
+        for (Reason r : Reason.values()) {
+            int count = getCount(r);
+            if (count == 0) continue;
+
+            out.println(r.getDescription() + " (" + count + " rows) at lines " + lineSummary(r));
+            for (String example : examples.get(r)) {
+                out.println("  " + example);
+            }
+        }
+    }
+
+    /**
+     * Write the full report (every rejected line number) on a background
+     * thread.
+     */
+    public CompletableFuture<Path> writeAsync(Path target) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Writer w = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                w.write("Source: " + source + System.lineSeparator());
+                w.write(summary() + System.lineSeparator());
+                for (Reason r : Reason.values()) {
+                    LineList list = lines.get(r);
+                    if (list.size == 0) continue;
+
+                    w.write(System.lineSeparator() + r.getDescription() + " (" + list.size + " rows)"
+                            + System.lineSeparator());
+                    for (String example : examples.get(r)) {
+                        w.write("  " + example + System.lineSeparator());
+                    }
+                    w.write("  lines:");
+                    for (int i = 0; i < list.size; i++) {
+                        w.write(' ');
+                        w.write(Integer.toString(list.lines[i]));
+                    }
+                    w.write(System.lineSeparator());
+                }
+                return target;
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write load report: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private String lineSummary(Reason reason) {
+        LineList list = lines.get(reason);
+        int shown = Math.min(list.size, 20);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < shown; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(list.lines[i]);
+        }
+        if (list.size > shown) {
+            sb.append(", ... (").append(list.size - shown).append(" more)");
+        }
+        return sb.toString();
+    }
+
+    private static final class LineList {
+        int[] lines = new int[8];
+        int size;
+
+        void add(int line) {
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            lines[size++] = line;
+        }
+    }
+}
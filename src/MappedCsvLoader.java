@@ -0,0 +1,637 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Participant CSV loader used by CsvManager.
+ *
+ * The file is memory-mapped through a FileChannel and each line is split in
+ * a single pass over its bytes. Only the ID and name become new Strings;
+ * game, role and type are looked up by their bytes in small per-chunk caches
+ * and share one String (and dictionary code) per distinct spelling.
+ *
+ * Large files are cut into chunks at line boundaries, parsed in parallel and
+ * merged back in file order. The header is checked in the same pass and
+ * rejected rows are collected into a LoadReport instead of being printed.
+ * A row needs all eight columns (empty ones count), and PersonalityType may
+ * only be empty when PersonalityScore holds a 0-100 score; RegistrationPipeline
+ * checks CSV records the same way. The file is UTF-8 text and its first
+ * line is the header.
+ */
+public class MappedCsvLoader {
+
+    private static final int MIN_PARALLEL_BYTES = 8 << 20;
+    private static final long MAX_CHUNK_BYTES = 256L << 20;
+
+    private static final int COLUMNS = 8;
+
+    /**
+     * Receives the valid rows of one chunk.
+     */
+    interface RowSink<T> {
+        void row(Chunk chunk);
+
+        T result();
+    }
+
+    public static List<Participant> loadParticipants(Path path, LoadReport report) throws IOException {
+        return loadParticipants(path, report, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * As loadParticipants, with the chunks of a large file parsed on pool.
+     */
+    public static List<Participant> loadParticipants(Path path, LoadReport report, ForkJoinPool pool)
+            throws IOException {
+        List<List<Participant>> parts = load(path, report, pool, () -> new RowSink<List<Participant>>() {
+            private final List<Participant> list = new ArrayList<>();
+
+            @Override
+            public void row(Chunk c) {
+                list.add(toParticipant(c));
+            }
+
+            @Override
+            public List<Participant> result() {
+                return list;
+            }
+        });
+
+        int total = 0;
+        for (List<Participant> part : parts) total += part.size();
+        List<Participant> all = new ArrayList<>(total);
+        for (List<Participant> part : parts) all.addAll(part);
+        return all;
+    }
+
+    /**
+     * Stream the rows of a file without holding all of them: the file is
+     * mapped one window at a time (cut at a line boundary) and only that
+     * window's participants are in memory. Rejections go to the report as
+     * the windows are read; a bad header yields an empty iterator.
+     */
+    public static ParticipantIterator iterate(Path path, LoadReport report) throws IOException {
+        return iterate(path, report, ParticipantIterator.WINDOW_BYTES);
+    }
+
+    /**
+     * As iterate, mapping windowBytes at a time (stretched to one whole
+     * line if a line is longer).
+     */
+    public static ParticipantIterator iterate(Path path, LoadReport report, long windowBytes)
+            throws IOException {
+        if (windowBytes < 1) {
+            throw new IllegalArgumentException("Window must be at least one byte.");
+        }
+        return new ParticipantIterator(path, report, windowBytes);
+    }
+
+    private static Participant toParticipant(Chunk c) {
+        Participant p = new Participant(c.text(0), c.text(1));
+        if (!c.isEmpty(2)) p.setEmail(c.text(2));
+        p.setPreferredGame(c.games.value, c.games.code);
+        p.setPreferredRole(c.roles.value, c.roles.code);
+        p.setSkillRating(c.skill);
+        p.setPersonalityScoreScaled(c.score);
+        p.setPersonalityType(c.type, c.typeCode);
+        return p;
+    }
+
+    public static ParticipantStore loadStore(Path path, LoadReport report) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        List<ParticipantStore> parts = load(path, report, pool, () -> new RowSink<ParticipantStore>() {
+            private final ParticipantStore store = new ParticipantStore(1024);
+
+            @Override
+            public void row(Chunk c) {
+                store.add(c.text(0), c.text(1), c.games.code, c.roles.code, c.typeCode,
+                        c.skill, c.score);
+            }
+
+            @Override
+            public ParticipantStore result() {
+                return store;
+            }
+        });
+
+        if (parts.isEmpty()) {
+            return new ParticipantStore();
+        }
+        ParticipantStore all = parts.get(0);
+        for (int i = 1; i < parts.size(); i++) {
+            all.addAll(parts.get(i));
+        }
+        return all;
+    }
+
+    interface SinkFactory<T> {
+        RowSink<T> create();
+    }
+
+    private static <T> List<T> load(Path path, LoadReport report, ForkJoinPool pool, SinkFactory<T> sinks)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            ByteBuffer probe = ByteBuffer.allocate(8192);
+
+            long bodyStart = nextLineStart(channel, 0, size, probe);
+            String headerError = CsvManager.checkHeader(readHeader(channel, bodyStart, probe));
+            if (headerError != null) {
+                report.setHeaderError(headerError);
+                return new ArrayList<>();
+            }
+
+            long[] bounds = chunkBounds(channel, bodyStart, size, probe, pool.getParallelism());
+            int chunks = bounds.length - 1;
+
+            List<Callable<Chunk>> tasks = new ArrayList<>(chunks);
+            List<RowSink<T>> results = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                long start = bounds[i];
+                long length = bounds[i + 1] - start;
+                RowSink<T> sink = sinks.create();
+                results.add(sink);
+                tasks.add(() -> {
+                    Chunk chunk = new Chunk(length == 0 ? ByteBuffer.allocate(0)
+                            : channel.map(FileChannel.MapMode.READ_ONLY, start, length), report);
+                    chunk.parse(sink);
+                    return chunk;
+                });
+            }
+
+            // Merge rejections in file order; line 1 is the header
+            List<T> parts = new ArrayList<>(chunks);
+            int lineOffset = 1;
+            for (Chunk chunk : run(tasks, pool)) {
+                chunk.mergeInto(report, lineOffset);
+                lineOffset += chunk.lines;
+            }
+            for (RowSink<T> sink : results) {
+                parts.add(sink.result());
+            }
+            return parts;
+        }
+    }
+
+    public static final class ParticipantIterator implements Iterator<Participant>, Closeable {
+        private static final long WINDOW_BYTES = 16L << 20;
+
+        private final FileChannel channel;
+        private final LoadReport report;
+        private final long size;
+        private final long windowBytes;
+        private long position;
+        private int lineOffset = 1;
+
+        private List<Participant> window = new ArrayList<>();
+        private int next;
+
+        ParticipantIterator(Path path, LoadReport report, long windowBytes) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.report = report;
+            this.size = channel.size();
+            this.windowBytes = Math.min(windowBytes, Integer.MAX_VALUE);
+
+            ByteBuffer probe = ByteBuffer.allocate(8192);
+            long bodyStart = nextLineStart(channel, 0, size, probe);
+            String headerError = CsvManager.checkHeader(readHeader(channel, bodyStart, probe));
+            if (headerError != null) {
+                report.setHeaderError(headerError);
+                position = size;
+            } else {
+                position = bodyStart;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == window.size()) {
+                if (position >= size) return false;
+                try {
+                    readWindow();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Participant next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Participant p = window.get(next);
+            window.set(next++, null);
+            return p;
+        }
+
+        private void readWindow() throws IOException {
+            long end = Math.min(position + windowBytes, size);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+
+            // Stop after the last complete line unless this is the end of the file
+            int length = buf.limit();
+            if (end < size) {
+                while (length > 0 && buf.get(length - 1) != '\n') length--;
+                if (length == 0) {
+                    length = (int) (nextLineStart(channel, position, size, ByteBuffer.allocate(8192))
+                            - position);
+                    buf = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                }
+            }
+            buf.limit(length);
+
+            List<Participant> rows = new ArrayList<>();
+            Chunk chunk = new Chunk(buf, report);
+            chunk.parse(new RowSink<Void>() {
+                @Override
+                public void row(Chunk c) {
+                    rows.add(toParticipant(c));
+                }
+
+                @Override
+                public Void result() {
+                    return null;
+                }
+            });
+            chunk.mergeInto(report, lineOffset);
+            lineOffset += chunk.lines;
+            position += length;
+
+            window = rows;
+            next = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static List<Chunk> run(List<Callable<Chunk>> tasks, ForkJoinPool pool) throws IOException {
+        List<Chunk> chunks = new ArrayList<>(tasks.size());
+        try {
+            if (tasks.size() == 1) {
+                chunks.add(tasks.get(0).call());
+                return chunks;
+            }
+            for (Future<Chunk> f : pool.invokeAll(tasks)) {
+                chunks.add(f.get());
+            }
+            return chunks;
+        } catch (IOException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("CSV load interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("CSV load failed: " + cause.getMessage(), cause);
+        } catch (Exception e) {
+            throw new IOException("CSV load failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static String readHeader(FileChannel channel, long end, ByteBuffer probe)
+            throws IOException {
+        ByteBuffer header = (end <= probe.capacity()) ? probe : ByteBuffer.allocate((int) end);
+        header.clear().limit((int) end);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // keep reading until the header line is complete
+        }
+        int length = header.position();
+        while (length > 0 && (header.get(length - 1) == '\n' || header.get(length - 1) == '\r')) {
+            length--;
+        }
+        return new String(header.array(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Chunk start offsets of the rows after the header (plus the file size
+     * at the end). Every chunk starts right after a '\n'.
+     */
+    private static long[] chunkBounds(FileChannel channel, long bodyStart, long size,
+                                      ByteBuffer probe, int parallelism) throws IOException {
+        long body = size - bodyStart;
+        int chunks = 1;
+        if (body >= MIN_PARALLEL_BYTES) {
+            chunks = Math.max(parallelism, 1);
+        }
+        chunks = (int) Math.max(chunks, (body + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        chunks = Math.max(chunks, 1);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(bodyStart);
+        for (int i = 1; i < chunks; i++) {
+            long pos = Math.max(bodyStart + body / chunks * i, bounds.get(bounds.size() - 1));
+            long lineStart = nextLineStart(channel, pos, size, probe);
+            if (lineStart > bounds.get(bounds.size() - 1) && lineStart < size) {
+                bounds.add(lineStart);
+            }
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) result[i] = bounds.get(i);
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long pos, long size, ByteBuffer probe)
+            throws IOException {
+        while (pos < size) {
+            probe.clear();
+            int read = channel.read(probe, pos);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parser state for one mapped region; fields of the current row are
+     * exposed to the sink as byte offsets.
+     */
+    static final class Chunk {
+        private final ByteBuffer buf;
+        private final int[] fieldStart = new int[COLUMNS];
+        private final int[] fieldEnd = new int[COLUMNS];
+        private byte[] scratch = new byte[256];
+
+        final FieldCache games = new FieldCache(CodeDictionary.GAMES, false);
+        final FieldCache roles = new FieldCache(CodeDictionary.ROLES, false);
+        final FieldCache types = new FieldCache(CodeDictionary.TYPES, true);
+        int skill;
+        int score;
+        String type;
+        int typeCode;
+
+        private final LoadReport report;      // only read for its example limit
+        int lines;
+        private int loaded;
+        private int[] rejectLines = new int[16];
+        private byte[] rejectReasons = new byte[16];
+        private int rejectCount;
+        private final List<Object[]> examples = new ArrayList<>();   // {reason, local line, text}
+        private final int[] examplesPerReason = new int[LoadReport.Reason.values().length];
+
+        Chunk(ByteBuffer buf, LoadReport report) {
+            this.buf = buf;
+            this.report = report;
+        }
+
+        String text(int field) {
+            int start = fieldStart[field];
+            int length = fieldEnd[field] - start;
+            if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            buf.get(start, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        void parse(RowSink<?> sink) {
+            int limit = buf.limit();
+            int pos = 0;
+
+            while (pos < limit) {
+                lines++;
+                int lineStart = pos;
+                while (pos < limit && buf.get(pos) != '\n') pos++;
+                int lineEnd = pos;
+                if (lineEnd > lineStart && buf.get(lineEnd - 1) == '\r') lineEnd--;
+                pos++;
+
+                parseLine(lineStart, lineEnd, sink);
+            }
+        }
+
+        private void parseLine(int start, int end, RowSink<?> sink) {
+            // Every column counts, empty ones included
+            int field = 0;
+            int fieldBegin = start;
+            for (int i = start; i <= end; i++) {
+                if (i == end || buf.get(i) == ',') {
+                    if (field < COLUMNS) {
+                        fieldStart[field] = fieldBegin;
+                        fieldEnd[field] = i;
+                    }
+                    field++;
+                    fieldBegin = i + 1;
+                }
+            }
+            if (field < COLUMNS) {
+                reject(LoadReport.Reason.TOO_FEW_COLUMNS, start, end);
+                return;
+            }
+
+            for (int f = 0; f < COLUMNS; f++) {
+                trim(f);
+            }
+
+            // The PersonalityType column is only needed without a 0-100 score
+            long scaled = isEmpty(6) ? Long.MIN_VALUE : parseInt(fieldStart[6], fieldEnd[6]);
+            boolean scored = scaled >= 0 && scaled <= 100;
+            if (isEmpty(0) || isEmpty(1) || isEmpty(3)
+                    || isEmpty(4) || isEmpty(5) || (!scored && isEmpty(7))) {
+                reject(LoadReport.Reason.MISSING_FIELDS, start, end);
+                return;
+            }
+
+            long value = parseInt(fieldStart[4], fieldEnd[4]);
+            if (value == Long.MIN_VALUE) {
+                reject(LoadReport.Reason.INVALID_SKILL, start, end);
+                return;
+            }
+
+            if (value < 1 || value > 10) {
+                reject(LoadReport.Reason.SKILL_OUT_OF_RANGE, start, end);
+                return;
+            }
+
+            skill = (int) value;
+            games.lookup(buf, fieldStart[3], fieldEnd[3]);
+            roles.lookup(buf, fieldStart[5], fieldEnd[5]);
+            if (scored) {
+                score = (int) scaled;
+                type = PersonalityClassifier.typeOf(score);
+                typeCode = PersonalityClassifier.typeCodeOf(score);
+            } else {
+                // No usable score: the PersonalityType column as written
+                score = 0;
+                types.lookup(buf, fieldStart[7], fieldEnd[7]);
+                type = types.value;
+                typeCode = types.code;
+            }
+            sink.row(this);
+            loaded++;
+        }
+
+        private void trim(int f) {
+            int s = fieldStart[f];
+            int e = fieldEnd[f];
+            while (s < e && (buf.get(s) & 0xFF) <= ' ') s++;
+            while (e > s && (buf.get(e - 1) & 0xFF) <= ' ') e--;
+            fieldStart[f] = s;
+            fieldEnd[f] = e;
+        }
+
+        private boolean isEmpty(int f) {
+            return fieldStart[f] == fieldEnd[f];
+        }
+
+        // Integer.parseInt rules; Long.MIN_VALUE when it would throw
+        private long parseInt(int s, int e) {
+            boolean negative = false;
+            if (s < e && (buf.get(s) == '-' || buf.get(s) == '+')) {
+                negative = buf.get(s) == '-';
+                s++;
+            }
+            if (s == e) return Long.MIN_VALUE;
+
+            long value = 0;
+            for (int i = s; i < e; i++) {
+                int d = buf.get(i) - '0';
+                if (d < 0 || d > 9) return Long.MIN_VALUE;
+                value = value * 10 + d;
+                if (value > (long) Integer.MAX_VALUE + 1) return Long.MIN_VALUE;
+            }
+            if (negative) value = -value;
+            if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) return Long.MIN_VALUE;
+            return value;
+        }
+
+        // Cheap for the common case: a line number and a reason byte.
+        // Only the first few rows per reason are turned into text.
+        private void reject(LoadReport.Reason reason, int start, int end) {
+            if (rejectCount == rejectLines.length) {
+                rejectLines = Arrays.copyOf(rejectLines, rejectCount * 2);
+                rejectReasons = Arrays.copyOf(rejectReasons, rejectCount * 2);
+            }
+            rejectLines[rejectCount] = lines;
+            rejectReasons[rejectCount] = (byte) reason.ordinal();
+            rejectCount++;
+
+            if (examplesPerReason[reason.ordinal()]++ < report.getMaxExamples()) {
+                int length = end - start;
+                byte[] line = new byte[length];
+                buf.get(start, line, 0, length);
+                examples.add(new Object[] {reason, lines, new String(line, StandardCharsets.UTF_8)});
+            }
+        }
+
+        void mergeInto(LoadReport target, int lineOffset) {
+            LoadReport.Reason[] reasons = LoadReport.Reason.values();
+            target.addRows(lines, loaded);
+            for (int i = 0; i < rejectCount; i++) {
+                target.addRejected(reasons[rejectReasons[i]], lineOffset + rejectLines[i]);
+            }
+            for (Object[] e : examples) {
+                target.addExample((LoadReport.Reason) e[0], lineOffset + (Integer) e[1], (String) e[2]);
+            }
+        }
+    }
+
+    /**
+     * Byte-keyed cache of one column's distinct values. After lookup,
+     * {@code value} and {@code code} describe the last field seen.
+     */
+    static final class FieldCache {
+        private final CodeDictionary dictionary;
+        private final boolean upperCase;
+
+        private byte[][] keys = new byte[16][];
+        private String[] values = new String[16];
+        private int[] codes = new int[16];
+        private int count;
+
+        String value;
+        int code;
+
+        FieldCache(CodeDictionary dictionary, boolean upperCase) {
+            this.dictionary = dictionary;
+            this.upperCase = upperCase;
+        }
+
+        void lookup(ByteBuffer buf, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buf.get(i);
+            }
+
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                if (matches(keys[slot], buf, start, end)) {
+                    value = values[slot];
+                    code = codes[slot];
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            byte[] key = new byte[end - start];
+            buf.get(start, key, 0, key.length);
+            String text = new String(key, StandardCharsets.UTF_8);
+            if (upperCase) text = text.toUpperCase();
+
+            keys[slot] = key;
+            values[slot] = text;
+            codes[slot] = dictionary.codeOf(text);
+            value = values[slot];
+            code = codes[slot];
+
+            if (++count * 2 > keys.length) {
+                rehash();
+            }
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buf, int start, int end) {
+            if (key.length != end - start) return false;
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buf.get(start + i)) return false;
+            }
+            return true;
+        }
+
+        private void rehash() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            int[] oldCodes = codes;
+
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[keys.length];
+            codes = new int[keys.length];
+            int mask = keys.length - 1;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int hash = 1;
+                for (byte b : oldKeys[i]) hash = 31 * hash + b;
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                codes[slot] = oldCodes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Process-wide counters, timers and histograms, looked up by name.
+ *
+ * Recording is a LongAdder update (histograms add one to a power-of-two
+ * bucket), so callers keep their metrics in static fields and record
+ * unconditionally. registerMBeans() publishes every metric as an MXBean
+ * named "teammate:type=Counter|Timer|Histogram,name=...", and startLogging
+ * prints the non-zero metrics on one line at a fixed period.
+ */
+public final class Metrics {
+
+    public static final String DOMAIN = "teammate";
+
+    private static final Map<String, Object> METRICS = new ConcurrentSkipListMap<>();
+    private static volatile MBeanServer mbeans;
+
+    private Metrics() {
+    }
+
+    public interface CounterMXBean {
+        long getCount();
+
+        void reset();
+    }
+
+    public interface HistogramMXBean {
+        long getCount();
+
+        long getSum();
+
+        long getMax();
+
+        double getMean();
+
+        long getP50();
+
+        long getP90();
+
+        long getP99();
+
+        void reset();
+    }
+
+    public interface TimerMXBean {
+        long getCount();
+
+        double getTotalMillis();
+
+        double getMeanMillis();
+
+        double getMaxMillis();
+
+        double getP50Millis();
+
+        double getP99Millis();
+
+        void reset();
+    }
+
+    public static final class Counter implements CounterMXBean {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public void reset() {
+            count.reset();
+        }
+
+        @Override
+        public String toString() {
+            return Long.toString(getCount());
+        }
+    }
+
+    /**
+     * Distribution of non-negative values. Percentiles are the upper bound
+     * of the power-of-two bucket they fall in, so they are within a factor
+     * of two (and never above the maximum).
+     */
+    public static final class Histogram implements HistogramMXBean {
+        private final LongAdder[] buckets = new LongAdder[65];   // bucket b: values below 2^b
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] = new LongAdder();
+            }
+        }
+
+        public void record(long value) {
+            long v = Math.max(0, value);
+            buckets[64 - Long.numberOfLeadingZeros(v)].increment();
+            count.increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public long getSum() {
+            return sum.sum();
+        }
+
+        @Override
+        public long getMax() {
+            return max.get();
+        }
+
+        @Override
+        public double getMean() {
+            long n = getCount();
+            return (n == 0) ? 0 : getSum() / (double) n;
+        }
+
+        @Override
+        public long getP50() {
+            return percentile(0.50);
+        }
+
+        @Override
+        public long getP90() {
+            return percentile(0.90);
+        }
+
+        @Override
+        public long getP99() {
+            return percentile(0.99);
+        }
+
+        public long percentile(double p) {
+            long n = getCount();
+            if (n == 0) return 0;
+
+            long rank = (long) Math.ceil(n * p);
+            long seen = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b].sum();
+                if (seen >= rank) {
+                    long upper = (b == 0) ? 0 : (b >= 63) ? Long.MAX_VALUE : (1L << b) - 1;
+                    return Math.min(upper, getMax());
+                }
+            }
+            return getMax();
+        }
+
+        @Override
+        public void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + getCount() + " mean=" + format(getMean()) + " p99=" + getP99() + " max=" + getMax();
+        }
+    }
+
+    /**
+     * Histogram of durations in nanoseconds, reported in milliseconds.
+     */
+    public static final class Timer implements TimerMXBean {
+        private final Histogram nanos = new Histogram();
+
+        public void record(long elapsedNanos) {
+            nanos.record(elapsedNanos);
+        }
+
+        /**
+         * Record the time since start (a System.nanoTime() value).
+         */
+        public void recordSince(long start) {
+            nanos.record(System.nanoTime() - start);
+        }
+
+        @Override
+        public long getCount() {
+            return nanos.getCount();
+        }
+
+        @Override
+        public double getTotalMillis() {
+            return nanos.getSum() / 1e6;
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return nanos.getMean() / 1e6;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return nanos.getMax() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return nanos.getP50() / 1e6;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return nanos.getP99() / 1e6;
+        }
+
+        @Override
+        public void reset() {
+            nanos.reset();
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + getCount() + " total=" + format(getTotalMillis()) + "ms"
+                    + " max=" + format(getMaxMillis()) + "ms";
+        }
+    }
+
+    public static Counter counter(String name) {
+        return lookup(name, Counter.class);
+    }
+
+    public static Timer timer(String name) {
+        return lookup(name, Timer.class);
+    }
+
+    public static Histogram histogram(String name) {
+        return lookup(name, Histogram.class);
+    }
+
+    /**
+     * Register every metric (including ones created later) with the
+     * platform MBean server. Calling it again does nothing.
+     */
+    public static synchronized void registerMBeans() {
+        if (mbeans != null) return;
+        mbeans = ManagementFactory.getPlatformMBeanServer();
+        for (Map.Entry<String, Object> e : METRICS.entrySet()) {
+            register(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Print a line with every non-zero metric to out every periodSeconds,
+     * from a daemon thread. Does nothing when periodSeconds is not positive.
+     */
+    public static void startLogging(long periodSeconds, PrintStream out) {
+        if (periodSeconds <= 0) return;
+
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-log");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(() -> out.println(logLine()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The non-zero metrics in name order, e.g.
+     * "[metrics] form.total{n=1 total=12.40ms max=12.40ms} rows.read{20000}".
+     */
+    public static String logLine() {
+        StringBuilder sb = new StringBuilder("[metrics]");
+        for (Map.Entry<String, Object> e : METRICS.entrySet()) {
+            if (countOf(e.getValue()) == 0) continue;
+            sb.append(' ').append(e.getKey()).append('{').append(e.getValue()).append('}');
+        }
+        return sb.toString();
+    }
+
+    private static long countOf(Object metric) {
+        if (metric instanceof Counter) return ((Counter) metric).getCount();
+        if (metric instanceof Timer) return ((Timer) metric).getCount();
+        return ((Histogram) metric).getCount();
+    }
+
+    private static <T> T lookup(String name, Class<T> type) {
+        Object metric = METRICS.get(name);
+        if (metric == null) {
+            synchronized (Metrics.class) {
+                metric = METRICS.get(name);
+                if (metric == null) {
+                    metric = newMetric(type);
+                    METRICS.put(name, metric);
+                    if (mbeans != null) register(name, metric);
+                }
+            }
+        }
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is a "
+                    + metric.getClass().getSimpleName() + ", not a " + type.getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    private static Object newMetric(Class<?> type) {
+        if (type == Counter.class) return new Counter();
+        if (type == Timer.class) return new Timer();
+        return new Histogram();
+    }
+
+    private static void register(String name, Object metric) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type="
+                    + metric.getClass().getSimpleName() + ",name=" + ObjectName.quote(name));
+            if (metric instanceof Counter) {
+                mbeans.registerMBean(new StandardMBean((Counter) metric, CounterMXBean.class, true), objectName);
+            } else if (metric instanceof Timer) {
+                mbeans.registerMBean(new StandardMBean((Timer) metric, TimerMXBean.class, true), objectName);
+            } else {
+                mbeans.registerMBean(new StandardMBean((Histogram) metric, HistogramMXBean.class, true), objectName);
+            }
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by an earlier call
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register metric " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Seeding as a min-cost assignment: each team (standing for its leader)
+ * gets one thinker so that the total cost over the whole event is minimal.
+ * Pairing a leader with a thinker costs
+ *
+ *   (leader skill + thinker skill - target)^2
+ *   + the role bonus when both have the same role
+ *   + SAME_GAME_COST when both play the same game
+ *
+ * where target is the average pair the greedy would seed (leader plus one
+ * of the strongest thinkers). Pairs that would break the game or role
+ * limit are not allowed.
+ *
+ * Leaders (and thinkers) with the same skill, game and role are
+ * interchangeable, so the problem is solved between those classes (a few
+ * hundred on each side, however large the event) as a transportation
+ * problem, by successive shortest paths with node potentials, and the flow
+ * between classes is then handed out to rows.
+ */
+final class MinCostSeeding implements FormationStrategy {
+
+    static final MinCostSeeding INSTANCE = new MinCostSeeding();
+
+    private static final long SCALE = 100;           // costs are in 1/100 skill points squared
+    private static final int SAME_GAME_COST = 4;
+
+    private MinCostSeeding() {
+    }
+
+    @Override
+    public int[] seed(FormationState state, int[] leaders, int[] thinkers, PlacementSink sink) {
+        int teamCount = state.getTeamCount();
+        int wanted = Math.min(teamCount, thinkers.length);
+        if (wanted == 0) return thinkers;
+
+        ParticipantStore store = state.getStore();
+        Classes leaderClasses = new Classes(store, leaders, teamCount);
+        Classes thinkerClasses = new Classes(store, thinkers, thinkers.length);
+
+        double target = 0;
+        for (int i = 0; i < teamCount; i++) {
+            target += store.skill(leaders[i]) / (double) teamCount;
+        }
+        for (int i = 0; i < wanted; i++) {
+            target += store.skill(thinkers[i]) / (double) wanted;
+        }
+
+        // Nodes: source, thinker classes, leader classes, drain
+        int nT = thinkerClasses.size();
+        int nL = leaderClasses.size();
+        int source = 0;
+        int drain = nT + nL + 1;
+        MinCostFlow flow = new MinCostFlow(nT + nL + 2);
+
+        for (int t = 0; t < nT; t++) {
+            flow.addEdge(source, 1 + t, thinkerClasses.count(t), 0);
+        }
+        for (int l = 0; l < nL; l++) {
+            flow.addEdge(1 + nT + l, drain, leaderClasses.count(l), 0);
+        }
+
+        int emptyRole = state.getStore().emptyRoleCode();
+        for (int t = 0; t < nT; t++) {
+            for (int l = 0; l < nL; l++) {
+                boolean sameGame = thinkerClasses.game(t) >= 0 && thinkerClasses.game(t) == leaderClasses.game(l);
+                if (sameGame && state.getMaxSameGamePerTeam() < 2) continue;
+                boolean sameRole = thinkerClasses.role(t) >= 0 && thinkerClasses.role(t) != emptyRole
+                        && thinkerClasses.role(t) == leaderClasses.role(l);
+                if (sameRole && state.getMaxSameRolePerTeam() < 2) continue;
+
+                double deviation = leaderClasses.skill(l) + thinkerClasses.skill(t) - target;
+                long cost = Math.round(SCALE * deviation * deviation)
+                        + (sameRole ? SCALE * state.getRoleBonus() : 0)
+                        + (sameGame ? SCALE * SAME_GAME_COST : 0);
+                flow.addEdge(1 + t, 1 + nT + l, wanted, cost);
+            }
+        }
+
+        flow.run(source, drain, wanted);
+
+        // Hand the flow out: each leader class takes thinkers class by class, strongest first
+        int[][] remainingFlow = new int[nL][nT];
+        for (int l = 0; l < nL; l++) {
+            for (int t = 0; t < nT; t++) {
+                remainingFlow[l][t] = (int) flow.flowOn(1 + t, 1 + nT + l);
+            }
+        }
+        int[] nextClass = new int[nL];
+        int[] nextMember = new int[nT];
+        int[][] members = thinkerClasses.members();
+        boolean[] used = new boolean[thinkers.length];
+
+        for (int team = 0; team < teamCount; team++) {
+            int l = leaderClasses.classOf(team);
+            while (nextClass[l] < nT && remainingFlow[l][nextClass[l]] == 0) {
+                nextClass[l]++;
+            }
+            if (nextClass[l] == nT) continue;     // no thinker for this team
+
+            int t = nextClass[l];
+            remainingFlow[l][t]--;
+            int position = members[t][nextMember[t]++];
+            used[position] = true;
+
+            state.place(team, thinkers[position]);
+            sink.placed(thinkers[position], team);
+        }
+
+        int[] rest = new int[thinkers.length];
+        int count = 0;
+        for (int i = 0; i < thinkers.length; i++) {
+            if (!used[i]) rest[count++] = thinkers[i];
+        }
+        return Arrays.copyOf(rest, count);
+    }
+
+    @Override
+    public String toString() {
+        return "min-cost";
+    }
+
+    /**
+     * Rows grouped by (skill, game, role), classes numbered in order of
+     * first appearance.
+     */
+    private static final class Classes {
+        private final int[] classOf;
+        private final List<int[]> attributes = new ArrayList<>();   // {skill, game, role}
+        private int[] counts = new int[16];
+
+        Classes(ParticipantStore store, int[] rows, int length) {
+            classOf = new int[length];
+            Map<Long, Integer> ids = new HashMap<>();
+            for (int i = 0; i < length; i++) {
+                int row = rows[i];
+                int skill = store.skill(row);
+                int game = store.gameCode(row);
+                int role = store.roleCode(row);
+                long key = ((long) skill << 42) | ((long) (game + 1) << 21) | (role + 1);
+
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = attributes.size();
+                    ids.put(key, id);
+                    attributes.add(new int[] {skill, game, role});
+                    if (id == counts.length) counts = Arrays.copyOf(counts, id * 2);
+                }
+                classOf[i] = id;
+                counts[id]++;
+            }
+        }
+
+        int size() {
+            return attributes.size();
+        }
+
+        int classOf(int position) {
+            return classOf[position];
+        }
+
+        int count(int id) {
+            return counts[id];
+        }
+
+        int skill(int id) {
+            return attributes.get(id)[0];
+        }
+
+        int game(int id) {
+            return attributes.get(id)[1];
+        }
+
+        int role(int id) {
+            return attributes.get(id)[2];
+        }
+
+        // Positions (into the rows array) of each class, in order
+        int[][] members() {
+            int[][] members = new int[size()][];
+            int[] filled = new int[size()];
+            for (int id = 0; id < size(); id++) {
+                members[id] = new int[counts[id]];
+            }
+            for (int i = 0; i < classOf.length; i++) {
+                members[classOf[i]][filled[classOf[i]]++] = i;
+            }
+            return members;
+        }
+    }
+
+    /**
+     * Primal-dual min-cost flow on a small dense graph. Each round runs
+     * Dijkstra on costs reduced by node potentials (which keeps them
+     * non-negative once residual arcs with negative cost appear), then
+     * pushes flow along every path of zero reduced cost, i.e. every
+     * shortest path, as Dinic blocking flows before the next round.
+     */
+    private static final class MinCostFlow {
+        private static final long INF = Long.MAX_VALUE / 4;
+
+        private final int n;
+        private final long[] capacity;     // [from * n + to]
+        private final long[] cost;
+        private final long[] potential;
+
+        MinCostFlow(int n) {
+            this.n = n;
+            this.capacity = new long[n * n];
+            this.cost = new long[n * n];
+            this.potential = new long[n];
+        }
+
+        // The graph never has edges in both directions between two nodes
+        void addEdge(int from, int to, long cap, long edgeCost) {
+            capacity[from * n + to] = cap;
+            cost[from * n + to] = edgeCost;
+            cost[to * n + from] = -edgeCost;
+        }
+
+        long flowOn(int from, int to) {
+            return capacity[to * n + from];
+        }
+
+        void run(int source, int drain, long amount) {
+            long[] dist = new long[n];
+            boolean[] done = new boolean[n];
+            int[] level = new int[n];
+            int[] nextArc = new int[n];
+
+            while (amount > 0) {
+                Arrays.fill(dist, INF);
+                Arrays.fill(done, false);
+                dist[source] = 0;
+
+                for (int round = 0; round < n; round++) {
+                    int u = -1;
+                    for (int v = 0; v < n; v++) {
+                        if (!done[v] && dist[v] < INF && (u < 0 || dist[v] < dist[u])) u = v;
+                    }
+                    if (u < 0) break;
+                    done[u] = true;
+
+                    int row = u * n;
+                    long base = dist[u] + potential[u];
+                    for (int v = 0; v < n; v++) {
+                        if (capacity[row + v] > 0 && !done[v]) {
+                            long d = base + cost[row + v] - potential[v];
+                            if (d < dist[v]) dist[v] = d;
+                        }
+                    }
+                }
+                if (dist[drain] >= INF) return;           // nothing more can be paired
+
+                for (int v = 0; v < n; v++) {
+                    potential[v] += Math.min(dist[v], dist[drain]);
+                }
+
+                // Blocking flows (Dinic) on the arcs of zero reduced cost
+                while (amount > 0 && levelAdmissible(source, drain, level)) {
+                    Arrays.fill(nextArc, 0);
+                    long pushed;
+                    while (amount > 0 && (pushed = push(source, drain, amount, level, nextArc)) > 0) {
+                        amount -= pushed;
+                    }
+                }
+            }
+        }
+
+        private boolean admissible(int u, int v) {
+            return capacity[u * n + v] > 0 && cost[u * n + v] + potential[u] - potential[v] == 0;
+        }
+
+        // Breadth-first levels from the source over admissible arcs; false if the drain is not reached
+        private boolean levelAdmissible(int source, int drain, int[] level) {
+            Arrays.fill(level, -1);
+            int[] queue = new int[n];
+            int head = 0;
+            int tail = 0;
+            level[source] = 0;
+            queue[tail++] = source;
+            while (head < tail) {
+                int u = queue[head++];
+                for (int v = 0; v < n; v++) {
+                    if (level[v] < 0 && admissible(u, v)) {
+                        level[v] = level[u] + 1;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+            return level[drain] >= 0;
+        }
+
+        // One augmenting path along increasing levels; nextArc skips arcs already found useless
+        private long push(int u, int drain, long limit, int[] level, int[] nextArc) {
+            if (u == drain) return limit;
+
+            for (; nextArc[u] < n; nextArc[u]++) {
+                int v = nextArc[u];
+                if (level[v] == level[u] + 1 && admissible(u, v)) {
+                    long pushed = push(v, drain, Math.min(limit, capacity[u * n + v]), level, nextArc);
+                    if (pushed > 0) {
+                        capacity[u * n + v] -= pushed;
+                        capacity[v * n + u] += pushed;
+                        return pushed;
+                    }
+                }
+            }
+            return 0;
+        }
+    }
+}
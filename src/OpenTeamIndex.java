@@ -0,0 +1,156 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Index of the teams that still have room, used by FormationState instead
+ * of scanning every team for every participant.
+ *
+ * Teams are grouped into buckets by constraint state: the TeamRules state
+ * word (caps reached, whether there is a thinker yet) and the roles the team
+ * still wants. A bucket is checked against a row with one AND of its word
+ * and the row's mask. Inside a bucket teams are ordered by
+ * (total skill, team number), so the first team of every compatible bucket
+ * is a candidate and the best of those is exactly the team the linear scan
+ * would pick. Full teams leave the index.
+ *
+ * Only used when the state's rules are compiled.
+ */
+public class OpenTeamIndex {
+
+    private final FormationState state;
+    private final Map<StateKey, Bucket> buckets = new HashMap<>();
+    private final Bucket[] bucketOf;
+    private final long[] entryOf;           // (skill << 32) | team
+
+    public OpenTeamIndex(FormationState state) {
+        this.state = state;
+        this.bucketOf = new Bucket[state.getTeamCount()];
+        this.entryOf = new long[state.getTeamCount()];
+    }
+
+    /**
+     * Add a team under its current state.
+     */
+    public void insert(int team) {
+        int skill = state.totalSkill(team);
+        StateKey key = new StateKey(state.word(team), state.wantedRoles(team));
+
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket(key);
+            buckets.put(key, bucket);
+        }
+
+        long entry = ((long) skill << 32) | team;
+        bucket.entries.add(entry);
+        bucketOf[team] = bucket;
+        entryOf[team] = entry;
+    }
+
+    /**
+     * Take a team out (before its state changes, or when it is full).
+     */
+    public void remove(int team) {
+        Bucket bucket = bucketOf[team];
+        if (bucket == null) return;
+
+        bucket.entries.remove(entryOf[team]);
+        if (bucket.entries.isEmpty()) {
+            buckets.remove(bucket.key);
+        }
+        bucketOf[team] = null;
+    }
+
+    /**
+     * Open team with no thinker yet whose word passes the thinker's mask,
+     * with the lowest total skill (-1 if none).
+     */
+    public int bestForFirstThinker(long mask) {
+        long best = Long.MAX_VALUE;
+        for (Bucket b : buckets.values()) {
+            if ((b.key.word & (mask | TeamRules.HAS_THINKER)) != 0) continue;
+            best = Math.min(best, b.entries.first());
+        }
+        return best == Long.MAX_VALUE ? -1 : (int) best;
+    }
+
+    /**
+     * Open team that passes the team rules for the row and has the lowest
+     * score (total skill, minus the role bonus when the team still wants the
+     * row's role). Returns -1 if none.
+     */
+    public int bestFor(int row) {
+        TeamRules rules = state.getRules();
+        int role = state.getStore().roleCode(row);
+        long mask = state.maskOf(row);
+        long roleBit = role >= 0 ? 1L << role : 0L;
+
+        long best = Long.MAX_VALUE;       // (score << 32) | team
+        int gameRejects = 0;
+        int thinkerRejects = 0;
+        int roleRejects = 0;
+
+        for (Bucket b : buckets.values()) {
+            StateKey key = b.key;
+
+            // A rejected bucket turns down all of its teams
+            long blocking = key.word & mask;
+            if (blocking != 0) {
+                if (rules.blocksGame(blocking)) {
+                    gameRejects += b.entries.size();
+                } else if (rules.blocksThinkers(blocking)) {
+                    thinkerRejects += b.entries.size();
+                } else {
+                    roleRejects += b.entries.size();
+                }
+                continue;
+            }
+
+            long entry = b.entries.first();
+            if ((key.wantedRoles & roleBit) != 0) {
+                // Shift the whole key down; team numbers in the low bits are unaffected
+                entry -= (long) state.getRoleBonus() << 32;
+            }
+
+            if (entry < best) {
+                best = entry;
+            }
+        }
+        FormationState.countRejects(gameRejects, thinkerRejects, roleRejects);
+        return best == Long.MAX_VALUE ? -1 : (int) (best & 0xFFFFFFFFL);
+    }
+
+    private static final class Bucket {
+        final StateKey key;
+        final TreeSet<Long> entries = new TreeSet<>();
+
+        Bucket(StateKey key) {
+            this.key = key;
+        }
+    }
+
+    private static final class StateKey {
+        final long word;
+        final long wantedRoles;
+
+        StateKey(long word, long wantedRoles) {
+            this.word = word;
+            this.wantedRoles = wantedRoles;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof StateKey)) return false;
+            StateKey other = (StateKey) o;
+            return word == other.word && wantedRoles == other.wantedRoles;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(word, wantedRoles);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 public class Participant extends Person {
 
+    private String email;
     private String preferredGame;
     private String preferredRole;
     private int skillRating;
@@ -7,18 +8,32 @@ public class Participant extends Person {
     private int personalityScoreScaled;
     private String personalityType;
 
+    // Dictionary codes (see CodeDictionary), kept in sync by the setters
+    private int gameCode = CodeDictionary.NONE;
+    private int roleCode = CodeDictionary.NONE;
+    private int typeCode = CodeDictionary.NONE;
+
     public Participant(String id, String name) {
         super(id, name);
     }
 
 
 
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
     public String getPreferredGame() {
         return preferredGame;
     }
 
     public void setPreferredGame(String preferredGame) {
         this.preferredGame = preferredGame;
+        this.gameCode = CodeDictionary.GAMES.codeOf(preferredGame);
     }
 
     public String getPreferredRole() {
@@ -27,6 +42,7 @@ public class Participant extends Person {
 
     public void setPreferredRole(String preferredRole) {
         this.preferredRole = preferredRole;
+        this.roleCode = CodeDictionary.ROLES.codeOf(preferredRole);
     }
 
     public int getSkillRating() {
@@ -50,12 +66,49 @@ public class Participant extends Person {
         this.personalityScoreScaled = rawScore * 4;
     }
 
+    /**
+     * Set the 0-100 score directly, e.g. the PersonalityScore column of a
+     * CSV row (the raw survey total is not known there).
+     */
+    public void setPersonalityScoreScaled(int scaledScore) {
+        this.personalityScoreScaled = scaledScore;
+    }
+
     public String getPersonalityType() {
         return personalityType;
     }
 
     public void setPersonalityType(String personalityType) {
         this.personalityType = personalityType;
+        this.typeCode = CodeDictionary.TYPES.codeOf(personalityType);
+    }
+
+    // For callers that already hold the dictionary code
+    void setPreferredGame(String preferredGame, int gameCode) {
+        this.preferredGame = preferredGame;
+        this.gameCode = gameCode;
+    }
+
+    void setPreferredRole(String preferredRole, int roleCode) {
+        this.preferredRole = preferredRole;
+        this.roleCode = roleCode;
+    }
+
+    void setPersonalityType(String personalityType, int typeCode) {
+        this.personalityType = personalityType;
+        this.typeCode = typeCode;
+    }
+
+    public int getGameCode() {
+        return gameCode;
+    }
+
+    public int getRoleCode() {
+        return roleCode;
+    }
+
+    public int getTypeCode() {
+        return typeCode;
     }
 
 
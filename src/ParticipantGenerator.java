@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Seeded generator for large participant CSVs in the participants_sample.csv
+ * layout.
+ *
+ * Game, role, skill and personality follow the proportions of the sample
+ * file. The personality score is drawn inside the band of its type, so the
+ * type column always agrees with PersonalityClassifier. A configurable
+ * fraction of rows is malformed, spread evenly over the LoadReport reasons.
+ *
+ * Rows are produced in fixed blocks, each with its own random stream derived
+ * from the seed and block number, so the same seed always gives the same
+ * file whatever the thread count. Blocks are formatted straight to bytes on
+ * the pool and appended through a FileChannel in order.
+ *
+ * java ParticipantGenerator <output.csv> <count> [seed] [malformedFraction]
+ */
+public class ParticipantGenerator {
+
+    private static final int ROWS_PER_BLOCK = 1 << 16;
+
+    private static final String[] GAMES = {"FIFA", "CS:GO", "DOTA 2", "Basketball", "Chess", "Valorant"};
+    private static final int[] GAME_WEIGHTS = {23, 19, 17, 16, 15, 10};
+
+    private static final String[] ROLES = {"Strategist", "Attacker", "Defender", "Supporter", "Coordinator"};
+    private static final int[] ROLE_WEIGHTS = {20, 20, 20, 20, 20};
+
+    // Skill 1..10
+    private static final int[] SKILL_WEIGHTS = {6, 10, 10, 11, 14, 9, 11, 14, 7, 8};
+
+    // Type name and the score band PersonalityClassifier maps to it
+    private static final String[] TYPES = {"Leader", "Balanced", "Thinker"};
+    private static final int[] TYPE_WEIGHTS = {34, 33, 33};
+    private static final int[] TYPE_MIN_SCORE = {90, 70, 50};
+    private static final int[] TYPE_MAX_SCORE = {100, 89, 69};
+
+    private static final byte[][] GAME_BYTES = ascii(GAMES);
+    private static final byte[][] ROLE_BYTES = ascii(ROLES);
+    private static final byte[][] TYPE_BYTES = ascii(TYPES);
+
+    private final long seed;
+    private final double malformedFraction;
+
+    public ParticipantGenerator(long seed, double malformedFraction) {
+        if (malformedFraction < 0 || malformedFraction > 1) {
+            throw new IllegalArgumentException("Malformed fraction must be between 0 and 1.");
+        }
+        this.seed = seed;
+        this.malformedFraction = malformedFraction;
+    }
+
+    public void write(Path target, long count) throws IOException {
+        write(target, count, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Write the header and count rows to target, replacing any existing file.
+     */
+    public void write(Path target, long count, ForkJoinPool pool) throws IOException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Row count must not be negative.");
+        }
+
+        int idDigits = Math.max(3, Long.toString(count).length());
+        long blocks = (count + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK;
+        int inFlight = Math.max(2, pool.getParallelism() * 2);
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            writeFully(channel, ByteBuffer.wrap(
+                    (String.join(",", CsvManager.expectedHeaders()) + "\n").getBytes(StandardCharsets.US_ASCII)));
+
+            // Keep a bounded window of blocks being formatted; write them in order
+            Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+            long nextBlock = 0;
+            while (nextBlock < blocks || !pending.isEmpty()) {
+                while (nextBlock < blocks && pending.size() < inFlight) {
+                    long first = nextBlock * ROWS_PER_BLOCK;
+                    long block = nextBlock++;
+                    int rows = (int) Math.min(ROWS_PER_BLOCK, count - first);
+                    pending.add(pool.submit(() -> formatBlock(block, first, rows, idDigits)));
+                }
+                writeFully(channel, pending.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Participant generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Participant generation failed", e.getCause());
+        }
+    }
+
+    private ByteBuffer formatBlock(long block, long firstRow, int rows, int idDigits) {
+        SplittableRandom random = new SplittableRandom(seed ^ (block * 0x9E3779B97F4A7C15L));
+        RowBytes out = new RowBytes(rows * 96);
+
+        for (int i = 0; i < rows; i++) {
+            long number = firstRow + i + 1;
+            int game = pick(random, GAME_WEIGHTS);
+            int role = pick(random, ROLE_WEIGHTS);
+            int skill = pick(random, SKILL_WEIGHTS) + 1;
+            int type = pick(random, TYPE_WEIGHTS);
+            int score = TYPE_MIN_SCORE[type]
+                    + random.nextInt(TYPE_MAX_SCORE[type] - TYPE_MIN_SCORE[type] + 1);
+
+            // One malformed kind per LoadReport reason, in the same order
+            int malformed = (random.nextDouble() < malformedFraction) ? random.nextInt(4) : -1;
+
+            out.put('P').putPadded(number, idDigits).put(',');
+            out.put("Participant_").put(number).put(',');
+            out.put("user").put(number).put("@university.edu,");
+            out.put(GAME_BYTES[game]).put(',');
+
+            if (malformed == 0) {                           // too few columns
+                out.put(skill).put('\n');
+                continue;
+            }
+
+            if (malformed == 2) {                           // invalid skill
+                out.put("high");
+            } else if (malformed == 3) {                    // skill out of range
+                out.put(random.nextBoolean() ? 0 : 11 + random.nextInt(5));
+            } else {
+                out.put(skill);
+            }
+            out.put(',');
+
+            if (malformed != 1) {                           // missing role
+                out.put(ROLE_BYTES[role]);
+            }
+            out.put(',').put(score).put(',').put(TYPE_BYTES[type]).put('\n');
+        }
+        return out.toBuffer();
+    }
+
+    private static int pick(SplittableRandom random, int[] weights) {
+        int total = 0;
+        for (int w : weights) total += w;
+
+        int r = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) return i;
+        }
+        return weights.length - 1;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[][] ascii(String[] values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: ParticipantGenerator <output.csv> <count> [seed] [malformedFraction]");
+            return;
+        }
+
+        Path target = Paths.get(args[0]);
+        long count = Long.parseLong(args[1]);
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 42L;
+        double malformed = (args.length > 3) ? Double.parseDouble(args[3]) : 0.0;
+
+        long start = System.nanoTime();
+        new ParticipantGenerator(seed, malformed).write(target, count);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Wrote " + count + " participants to " + target + " in " + millis + " ms");
+    }
+}
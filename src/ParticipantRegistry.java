@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Everyone registered for the event, indexed by ID and by email.
+ *
+ * IDs are compared case-insensitively and emails case-insensitively with
+ * surrounding spaces ignored; participants without an email are only
+ * checked by ID. All methods can be called from several threads.
+ */
+public class ParticipantRegistry {
+
+    // Bulk batches smaller than this are checked on the calling thread
+    private static final int PARALLEL_MIN_BATCH = 50_000;
+
+    private final ConcurrentHashMap<String, Participant> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Participant> byEmail = new ConcurrentHashMap<>();
+    private final AtomicInteger highestNumber = new AtomicInteger();
+    private final ForkJoinPool pool;
+
+    public ParticipantRegistry() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParticipantRegistry(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public boolean containsId(String id) {
+        return id != null && byId.containsKey(normalizeId(id));
+    }
+
+    public boolean containsEmail(String email) {
+        String key = normalizeEmail(email);
+        return key != null && byEmail.containsKey(key);
+    }
+
+    public Participant get(String id) {
+        return (id == null) ? null : byId.get(normalizeId(id));
+    }
+
+    /**
+     * Add a participant unless their ID or email is taken.
+     * Returns null when added, otherwise DUPLICATE_ID or DUPLICATE_EMAIL.
+     */
+    public LoadReport.Reason register(Participant p) {
+        String idKey = normalizeId(p.getId());
+        if (byId.putIfAbsent(idKey, p) != null) {
+            return LoadReport.Reason.DUPLICATE_ID;
+        }
+
+        String emailKey = normalizeEmail(p.getEmail());
+        if (emailKey != null && byEmail.putIfAbsent(emailKey, p) != null) {
+            byId.remove(idKey, p);
+            return LoadReport.Reason.DUPLICATE_EMAIL;
+        }
+
+        int number = idNumber(idKey);
+        if (number > 0) {
+            highestNumber.accumulateAndGet(number, Math::max);
+        }
+        return null;
+    }
+
+    public boolean remove(Participant p) {
+        if (!byId.remove(normalizeId(p.getId()), p)) {
+            return false;
+        }
+        String emailKey = normalizeEmail(p.getEmail());
+        if (emailKey != null) {
+            byEmail.remove(emailKey, p);
+        }
+        return true;
+    }
+
+    /**
+     * Next free ID in the P001 style. Each call hands out a different
+     * number, also across threads.
+     */
+    public String nextId() {
+        while (true) {
+            String id = String.format("P%03d", highestNumber.incrementAndGet());
+            if (!byId.containsKey(id)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * The ID nextId would hand out now, without using it up (for showing
+     * as a suggestion). Registering it moves the next ID on, as with any
+     * ID in the P001 style.
+     */
+    public String peekNextId() {
+        for (int number = highestNumber.get() + 1; ; number++) {
+            String id = String.format("P%03d", number);
+            if (!byId.containsKey(id)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Register a whole batch. Keys are normalized and checked against the
+     * registry in parallel for large batches; the survivors are then added
+     * in batch order, so the first of two duplicates in the batch wins.
+     */
+    public BulkResult registerAll(List<Participant> batch) {
+        int n = batch.size();
+        String[] idKeys = new String[n];
+        String[] emailKeys = new String[n];
+        boolean[] taken = new boolean[n];
+
+        IntStream rows = IntStream.range(0, n);
+        if (n >= PARALLEL_MIN_BATCH && pool.getParallelism() > 1) {
+            pool.submit(() -> rows.parallel().forEach(i -> check(batch, i, idKeys, emailKeys, taken))).join();
+        } else {
+            rows.forEach(i -> check(batch, i, idKeys, emailKeys, taken));
+        }
+
+        BulkResult result = new BulkResult(n);
+        for (int i = 0; i < n; i++) {
+            Participant p = batch.get(i);
+            LoadReport.Reason reason;
+            if (taken[i]) {
+                reason = byId.containsKey(idKeys[i]) ? LoadReport.Reason.DUPLICATE_ID
+                        : LoadReport.Reason.DUPLICATE_EMAIL;
+            } else {
+                reason = register(p);
+            }
+
+            if (reason == null) {
+                result.accepted.add(p);
+            } else if (reason == LoadReport.Reason.DUPLICATE_ID) {
+                result.duplicateIds++;
+            } else {
+                result.duplicateEmails++;
+            }
+        }
+        return result;
+    }
+
+    private void check(List<Participant> batch, int i, String[] idKeys, String[] emailKeys,
+                       boolean[] taken) {
+        Participant p = batch.get(i);
+        idKeys[i] = normalizeId(p.getId());
+        emailKeys[i] = normalizeEmail(p.getEmail());
+        taken[i] = byId.containsKey(idKeys[i])
+                || (emailKeys[i] != null && byEmail.containsKey(emailKeys[i]));
+    }
+
+    static String normalizeId(String id) {
+        return id.trim().toUpperCase(Locale.ROOT);
+    }
+
+    static String normalizeEmail(String email) {
+        if (email == null) return null;
+        String key = email.trim().toLowerCase(Locale.ROOT);
+        return key.isEmpty() ? null : key;
+    }
+
+    // Number after the letter prefix (P034 -> 34), or -1 if there is none
+    private static int idNumber(String idKey) {
+        int start = idKey.length();
+        while (start > 0 && Character.isDigit(idKey.charAt(start - 1))) start--;
+        if (start == idKey.length() || idKey.length() - start > 9) return -1;
+        return Integer.parseInt(idKey, start, idKey.length(), 10);
+    }
+
+    /**
+     * Participants of a bulk registration that were added, and how many
+     * were turned away as duplicates.
+     */
+    public static class BulkResult {
+        private final List<Participant> accepted;
+        private int duplicateIds;
+        private int duplicateEmails;
+
+        BulkResult(int expected) {
+            this.accepted = new ArrayList<>(expected);
+        }
+
+        public List<Participant> getAccepted() {
+            return accepted;
+        }
+
+        public int getDuplicateIds() {
+            return duplicateIds;
+        }
+
+        public int getDuplicateEmails() {
+            return duplicateEmails;
+        }
+
+        public int getDuplicateCount() {
+            return duplicateIds + duplicateEmails;
+        }
+    }
+}
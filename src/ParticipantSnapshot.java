@@ -0,0 +1,381 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of a parsed participants CSV, kept next to it as
+ * "<file>.snap", so an unchanged file loads without parsing any text.
+ *
+ * A snapshot is only used when its fingerprint matches the CSV: the size,
+ * the last-modified time and a CRC32C over the first and last 64 KB and
+ * SAMPLE_PAGES pages spread over the rest of the file (hashing every byte
+ * would cost as much as reading the text).
+ *
+ * Layout (big-endian): magic, version, fingerprint and row count; the
+ * game, role and type dictionaries; one short per row for each code
+ * column and one byte for skill and score; ID, name and email as end
+ * offsets followed by their UTF-8 bytes; the load report; and a CRC32C of
+ * everything before it, so a damaged snapshot is never used.
+ */
+class ParticipantSnapshot {
+
+    static final String SUFFIX = ".snap";
+
+    private static final int MAGIC = 0x544D534E;       // "TMSN"
+    private static final int VERSION = 2;
+
+    private static final int EDGE_BYTES = 64 << 10;
+    private static final int SAMPLE_PAGES = 16;
+    private static final int PAGE_BYTES = 4 << 10;
+
+    private ParticipantSnapshot() {
+    }
+
+    static Path pathFor(Path csv) {
+        return csv.resolveSibling(csv.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Size, last-modified time and sampled content hash of a file.
+     */
+    static final class Fingerprint {
+        final long size;
+        final long modified;
+        final long hash;
+
+        Fingerprint(long size, long modified, long hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        boolean matches(Fingerprint other) {
+            return size == other.size && modified == other.modified && hash == other.hash;
+        }
+    }
+
+    static Fingerprint fingerprint(Path file) throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            CRC32C crc = new CRC32C();
+            ByteBuffer page = ByteBuffer.allocate(EDGE_BYTES);
+
+            hashRange(channel, 0, Math.min(size, EDGE_BYTES), crc, page);
+            if (size > 2L * EDGE_BYTES) {
+                long middle = size - 2L * EDGE_BYTES;
+                for (int i = 0; i < SAMPLE_PAGES; i++) {
+                    long position = EDGE_BYTES + middle * i / SAMPLE_PAGES;
+                    hashRange(channel, position, Math.min(PAGE_BYTES, size - EDGE_BYTES - position), crc, page);
+                }
+            }
+            if (size > EDGE_BYTES) {
+                long start = Math.max(EDGE_BYTES, size - EDGE_BYTES);
+                hashRange(channel, start, size - start, crc, page);
+            }
+            return new Fingerprint(size, modified, crc.getValue());
+        }
+    }
+
+    private static void hashRange(FileChannel channel, long position, long length, CRC32C crc,
+                                  ByteBuffer page) throws IOException {
+        page.clear().limit((int) length);
+        while (page.hasRemaining()) {
+            if (channel.read(page, position + page.position()) < 0) break;
+        }
+        page.flip();
+        crc.update(page);
+    }
+
+    /**
+     * The participants and report stored for csv, or null when there is no
+     * snapshot, it was made for different content or it cannot be read.
+     */
+    static CsvManager.LoadResult read(Path csv, Fingerprint expected) throws IOException {
+        Path snapshot = pathFor(csv);
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE || channel.size() < Long.BYTES) return null;
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            int end = buf.limit() - Long.BYTES;
+            CRC32C crc = new CRC32C();
+            crc.update(buf.slice(0, end));
+            if (crc.getValue() != buf.getLong(end)) return null;
+            buf.limit(end);
+
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+            Fingerprint stored = new Fingerprint(buf.getLong(), buf.getLong(), buf.getLong());
+            if (!stored.matches(expected)) return null;
+
+            int rows = buf.getInt();
+            String[] games = readStrings(buf);
+            String[] roles = readStrings(buf);
+            String[] types = readStrings(buf);
+            int[] gameCodes = codes(CodeDictionary.GAMES, games);
+            int[] roleCodes = codes(CodeDictionary.ROLES, roles);
+            int[] typeCodes = codes(CodeDictionary.TYPES, types);
+
+            short[] gameColumn = readShorts(buf, rows);
+            short[] roleColumn = readShorts(buf, rows);
+            short[] typeColumn = readShorts(buf, rows);
+            byte[] skills = readBytes(buf, rows);
+            byte[] scores = readBytes(buf, rows);
+            TextColumn ids = new TextColumn(buf, rows);
+            TextColumn names = new TextColumn(buf, rows);
+            TextColumn emails = new TextColumn(buf, rows);
+
+            List<Participant> participants = new ArrayList<>(rows);
+            for (int row = 0; row < rows; row++) {
+                Participant p = new Participant(ids.get(row), names.get(row));
+                p.setEmail(emails.get(row));
+                int game = gameColumn[row];
+                int role = roleColumn[row];
+                int type = typeColumn[row];
+                if (game >= 0) p.setPreferredGame(games[game], gameCodes[game]);
+                if (role >= 0) p.setPreferredRole(roles[role], roleCodes[role]);
+                if (type >= 0) p.setPersonalityType(types[type], typeCodes[type]);
+                p.setSkillRating(skills[row]);
+                p.setPersonalityScoreScaled(scores[row]);
+                participants.add(p);
+            }
+
+            return new CsvManager.LoadResult(participants, readReport(buf, csv.toString()));
+        } catch (RuntimeException e) {
+            // Truncated or damaged: treat it like a missing snapshot
+            return null;
+        }
+    }
+
+    /**
+     * Write the snapshot for csv (fingerprint taken before it was parsed).
+     * The file is written under a temporary name and then moved into place.
+     */
+    static void write(Path csv, Fingerprint fingerprint, List<Participant> participants,
+                      LoadReport report) throws IOException {
+        Path snapshot = pathFor(csv);
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        int rows = participants.size();
+
+        Map<String, Integer> games = new HashMap<>();
+        Map<String, Integer> roles = new HashMap<>();
+        Map<String, Integer> types = new HashMap<>();
+        short[] gameColumn = new short[rows];
+        short[] roleColumn = new short[rows];
+        short[] typeColumn = new short[rows];
+        for (int row = 0; row < rows; row++) {
+            Participant p = participants.get(row);
+            gameColumn[row] = code(games, p.getPreferredGame());
+            roleColumn[row] = code(roles, p.getPreferredRole());
+            typeColumn[row] = code(types, p.getPersonalityType());
+        }
+
+        CRC32C crc = new CRC32C();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Files.newOutputStream(temp), crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint.size);
+            out.writeLong(fingerprint.modified);
+            out.writeLong(fingerprint.hash);
+            out.writeInt(rows);
+
+            writeStrings(out, games);
+            writeStrings(out, roles);
+            writeStrings(out, types);
+
+            for (short s : gameColumn) out.writeShort(s);
+            for (short s : roleColumn) out.writeShort(s);
+            for (short s : typeColumn) out.writeShort(s);
+            for (Participant p : participants) out.writeByte(p.getSkillRating());
+            for (Participant p : participants) out.writeByte(p.getPersonalityScoreScaled());
+
+            List<byte[]> text = new ArrayList<>(rows);
+            for (int column = 0; column < 3; column++) {
+                text.clear();
+                for (Participant p : participants) {
+                    String value = (column == 0) ? p.getId() : (column == 1) ? p.getName() : p.getEmail();
+                    text.add((value == null) ? new byte[0] : value.getBytes(StandardCharsets.UTF_8));
+                }
+                writeText(out, text);
+            }
+
+            writeReport(out, report);
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+
+        if (Files.size(temp) > Integer.MAX_VALUE) {
+            // Too large to map in one piece
+            Files.delete(temp);
+            return;
+        }
+        try {
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static short code(Map<String, Integer> dictionary, String value) {
+        if (value == null) return -1;
+        Integer code = dictionary.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            if (code > Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct values for a snapshot.");
+            }
+            dictionary.put(value, code);
+        }
+        return code.shortValue();
+    }
+
+    // Global CodeDictionary code of every local dictionary entry
+    private static int[] codes(CodeDictionary dictionary, String[] values) {
+        int[] codes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            codes[i] = dictionary.codeOf(values[i]);
+        }
+        return codes;
+    }
+
+    private static void writeStrings(DataOutputStream out, Map<String, Integer> dictionary)
+            throws IOException {
+        String[] values = new String[dictionary.size()];
+        for (Map.Entry<String, Integer> e : dictionary.entrySet()) {
+            values[e.getValue()] = e.getKey();
+        }
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String[] readStrings(ByteBuffer buf) {
+        String[] values = new String[count(buf, buf.getInt(), Integer.BYTES)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(buf);
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = readBytes(buf, buf.getInt());
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static short[] readShorts(ByteBuffer buf, int count) {
+        short[] values = new short[count(buf, count, Short.BYTES)];
+        buf.slice(buf.position(), count * 2).asShortBuffer().get(values);
+        buf.position(buf.position() + count * 2);
+        return values;
+    }
+
+    private static byte[] readBytes(ByteBuffer buf, int count) {
+        byte[] values = new byte[count(buf, count, 1)];
+        buf.get(values);
+        return values;
+    }
+
+    // A count read from the file, checked against what is left of it before anything is allocated
+    private static int count(ByteBuffer buf, int count, int bytesEach) {
+        if (count < 0 || count > buf.remaining() / bytesEach) {
+            throw new IllegalArgumentException("Damaged snapshot");
+        }
+        return count;
+    }
+
+    // End offset of every value, then all the bytes; empty values read back as null
+    private static void writeText(DataOutputStream out, List<byte[]> values) throws IOException {
+        long end = 0;
+        for (byte[] v : values) {
+            end += v.length;
+            if (end > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Text column too large for a snapshot.");
+            }
+            out.writeInt((int) end);
+        }
+        for (byte[] v : values) {
+            out.write(v);
+        }
+    }
+
+    private static final class TextColumn {
+        private final int[] ends;
+        private final byte[] bytes;
+
+        TextColumn(ByteBuffer buf, int rows) {
+            ends = new int[count(buf, rows, Integer.BYTES)];
+            buf.slice(buf.position(), rows * 4).asIntBuffer().get(ends);
+            buf.position(buf.position() + rows * 4);
+            bytes = readBytes(buf, (rows == 0) ? 0 : ends[rows - 1]);
+        }
+
+        String get(int row) {
+            int start = (row == 0) ? 0 : ends[row - 1];
+            int length = ends[row] - start;
+            return (length == 0) ? null : new String(bytes, start, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void writeReport(DataOutputStream out, LoadReport report) throws IOException {
+        out.writeLong(report.getRowsRead());
+        out.writeLong(report.getRowsLoaded());
+
+        LoadReport.Reason[] reasons = LoadReport.Reason.values();
+        out.writeInt(reasons.length);
+        for (LoadReport.Reason reason : reasons) {
+            writeString(out, reason.name());
+            int[] lines = report.getLines(reason);
+            out.writeInt(lines.length);
+            for (int line : lines) out.writeInt(line);
+
+            List<String> examples = report.getExamples(reason);
+            out.writeInt(examples.size());
+            for (String example : examples) writeString(out, example);
+        }
+    }
+
+    private static LoadReport readReport(ByteBuffer buf, String source) {
+        LoadReport report = new LoadReport(source);
+        report.addRows(buf.getLong(), buf.getLong());
+
+        int reasons = buf.getInt();
+        for (int r = 0; r < reasons; r++) {
+            LoadReport.Reason reason = LoadReport.Reason.valueOf(readString(buf));
+            int lines = buf.getInt();
+            for (int i = 0; i < lines; i++) {
+                report.addRejected(reason, buf.getInt());
+            }
+            int examples = buf.getInt();
+            for (int i = 0; i < examples; i++) {
+                report.addFormattedExample(reason, readString(buf));
+            }
+        }
+        return report;
+    }
+}
@@ -0,0 +1,307 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented participant storage for the formation engine.
+ *
+ * Game, role and personality type are kept as codes in short arrays, skill
+ * as a byte, and IDs of the usual "P" + digits form as an int plus digit
+ * count, so a row costs a few dozen bytes instead of a Participant object
+ * with six Strings. Rows are addressed by index in the order they were
+ * added.
+ *
+ * Codes are local to the store. The built-in values of each CodeDictionary
+ * (and the empty role) keep their shared codes, so TYPE_LEADER and the like
+ * hold; any other value gets the next free code when the store first sees
+ * it. Counters sized by gameCodeCount() and roleCodeCount() therefore grow
+ * with what this roster holds, not with everything the process has seen.
+ */
+public class ParticipantStore {
+
+    private static final int MAX_CODE = Short.MAX_VALUE;
+
+    private final LocalCodes gameCodes;
+    private final LocalCodes roleCodes;
+    private final LocalCodes typeCodes;
+    private final int emptyRole;
+
+    private int size;
+
+    private int[] idNumbers;
+    private byte[] idDigits;                    // 0 = ID kept in otherIds
+    private final Map<Integer, String> otherIds = new HashMap<>();
+    private String[] names;
+    private short[] games;
+    private short[] roles;
+    private short[] types;
+    private byte[] skills;
+    private byte[] scores;                      // scaled 0-100 personality score
+
+    public ParticipantStore() {
+        this(16);
+    }
+
+    public ParticipantStore(int initialCapacity) {
+        gameCodes = new LocalCodes(CodeDictionary.GAMES, "games");
+        roleCodes = new LocalCodes(CodeDictionary.ROLES, "roles");
+        emptyRole = roleCodes.local(CodeDictionary.ROLES.codeOf(""));
+        typeCodes = new LocalCodes(CodeDictionary.TYPES, "personality types");
+        int capacity = Math.max(initialCapacity, 1);
+        idNumbers = new int[capacity];
+        idDigits = new byte[capacity];
+        names = new String[capacity];
+        games = new short[capacity];
+        roles = new short[capacity];
+        types = new short[capacity];
+        skills = new byte[capacity];
+        scores = new byte[capacity];
+    }
+
+    public static ParticipantStore of(List<Participant> participants) {
+        ParticipantStore store = new ParticipantStore(participants.size());
+        for (Participant p : participants) {
+            store.add(p);
+        }
+        return store;
+    }
+
+    public int add(Participant p) {
+        return add(p.getId(), p.getName(), p.getGameCode(), p.getRoleCode(),
+                p.getTypeCode(), p.getSkillRating(), p.getPersonalityScoreScaled());
+    }
+
+    /**
+     * Append a row from already-encoded values (CodeDictionary codes).
+     * Returns the row index.
+     */
+    public int add(String id, String name, int gameCode, int roleCode, int typeCode,
+                   int skill, int score) {
+        if (skill < 0 || skill > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Skill out of range for " + id + ": " + skill);
+        }
+        if (score < 0 || score > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Personality score out of range for " + id + ": " + score);
+        }
+        if (size == names.length) {
+            grow();
+        }
+
+        int row = size++;
+        encodeId(row, id);
+        names[row] = name;
+        games[row] = gameCodes.local(gameCode);
+        roles[row] = roleCodes.local(roleCode);
+        types[row] = typeCodes.local(typeCode);
+        skills[row] = (byte) skill;
+        scores[row] = (byte) score;
+        return row;
+    }
+
+    public int add(String id, String name, String game, String role, String type,
+                   int skill, int score) {
+        return add(id, name,
+                CodeDictionary.GAMES.codeOf(game),
+                CodeDictionary.ROLES.codeOf(role),
+                CodeDictionary.TYPES.codeOf(type),
+                skill, score);
+    }
+
+    /**
+     * Append every row of another store (used to merge parsed chunks).
+     */
+    public void addAll(ParticipantStore other) {
+        while (names.length < size + other.size) {
+            grow();
+        }
+        System.arraycopy(other.idNumbers, 0, idNumbers, size, other.size);
+        System.arraycopy(other.idDigits, 0, idDigits, size, other.size);
+        System.arraycopy(other.names, 0, names, size, other.size);
+        gameCodes.copy(other.gameCodes, other.games, games, size, other.size);
+        roleCodes.copy(other.roleCodes, other.roles, roles, size, other.size);
+        typeCodes.copy(other.typeCodes, other.types, types, size, other.size);
+        System.arraycopy(other.skills, 0, skills, size, other.size);
+        System.arraycopy(other.scores, 0, scores, size, other.size);
+        for (Map.Entry<Integer, String> e : other.otherIds.entrySet()) {
+            otherIds.put(size + e.getKey(), e.getValue());
+        }
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getId(int row) {
+        int digits = idDigits[row];
+        if (digits == 0) {
+            return otherIds.get(row);
+        }
+        StringBuilder sb = new StringBuilder(digits + 1).append('P');
+        String number = Integer.toString(idNumbers[row]);
+        for (int i = number.length(); i < digits; i++) {
+            sb.append('0');
+        }
+        return sb.append(number).toString();
+    }
+
+    public String getName(int row) {
+        return names[row];
+    }
+
+    /**
+     * Store-local game code of a row (NONE when it has no game).
+     */
+    public int gameCode(int row) {
+        return games[row];
+    }
+
+    public int roleCode(int row) {
+        return roles[row];
+    }
+
+    public int typeCode(int row) {
+        return types[row];
+    }
+
+    public int skill(int row) {
+        return skills[row];
+    }
+
+    public int score(int row) {
+        return scores[row];
+    }
+
+    /**
+     * Local game codes are below this (it grows as rows bring new games).
+     */
+    public int gameCodeCount() {
+        return gameCodes.count;
+    }
+
+    public int roleCodeCount() {
+        return roleCodes.count;
+    }
+
+    public int typeCodeCount() {
+        return typeCodes.count;
+    }
+
+    /**
+     * Local code of the empty role.
+     */
+    public int emptyRoleCode() {
+        return emptyRole;
+    }
+
+    /**
+     * Build a Participant object for one row.
+     */
+    public Participant toParticipant(int row) {
+        Participant p = new Participant(getId(row), names[row]);
+        p.setPreferredGame(CodeDictionary.GAMES.valueOf(gameCodes.global(games[row])));
+        p.setPreferredRole(CodeDictionary.ROLES.valueOf(roleCodes.global(roles[row])));
+        p.setSkillRating(skills[row]);
+        p.setPersonalityScoreScaled(scores[row]);
+        p.setPersonalityType(CodeDictionary.TYPES.valueOf(typeCodes.global(types[row])));
+        return p;
+    }
+
+    public List<Participant> toParticipants() {
+        List<Participant> list = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            list.add(toParticipant(row));
+        }
+        return list;
+    }
+
+    // "P" followed by 1-9 digits is stored as a number; anything else as text
+    private void encodeId(int row, String id) {
+        int length = (id == null) ? 0 : id.length();
+        if (length >= 2 && length <= 10 && id.charAt(0) == 'P') {
+            int value = 0;
+            int i = 1;
+            for (; i < length; i++) {
+                char c = id.charAt(i);
+                if (c < '0' || c > '9') break;
+                value = value * 10 + (c - '0');
+            }
+            if (i == length) {
+                idNumbers[row] = value;
+                idDigits[row] = (byte) (length - 1);
+                return;
+            }
+        }
+        idDigits[row] = 0;
+        otherIds.put(row, id);
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        idNumbers = Arrays.copyOf(idNumbers, capacity);
+        idDigits = Arrays.copyOf(idDigits, capacity);
+        names = Arrays.copyOf(names, capacity);
+        games = Arrays.copyOf(games, capacity);
+        roles = Arrays.copyOf(roles, capacity);
+        types = Arrays.copyOf(types, capacity);
+        skills = Arrays.copyOf(skills, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+    }
+
+    // Shared dictionary codes <-> this store's codes
+    private static final class LocalCodes {
+        private final String what;
+        private int[] localOf;          // [shared code] -> local code, NONE when not seen
+        private int[] sharedOf;         // [local code] -> shared code
+        int count;
+
+        LocalCodes(CodeDictionary dictionary, String what) {
+            this.what = what;
+            int seeded = dictionary.seededSize();
+            localOf = new int[Math.max(seeded, 8)];
+            sharedOf = new int[Math.max(seeded, 8)];
+            Arrays.fill(localOf, CodeDictionary.NONE);
+            for (int code = 0; code < seeded; code++) {
+                local(code);
+            }
+        }
+
+        short local(int shared) {
+            if (shared < 0) return (short) CodeDictionary.NONE;
+            if (shared >= localOf.length) {
+                int old = localOf.length;
+                localOf = Arrays.copyOf(localOf, Math.max(shared + 1, old * 2));
+                Arrays.fill(localOf, old, localOf.length, CodeDictionary.NONE);
+            }
+            int code = localOf[shared];
+            if (code == CodeDictionary.NONE) {
+                if (count > MAX_CODE) {
+                    throw new IllegalArgumentException("Too many distinct " + what + " in one roster.");
+                }
+                if (count == sharedOf.length) sharedOf = Arrays.copyOf(sharedOf, count * 2);
+                code = count++;
+                sharedOf[code] = shared;
+                localOf[shared] = code;
+            }
+            return (short) code;
+        }
+
+        int global(int local) {
+            return (local < 0) ? CodeDictionary.NONE : sharedOf[local];
+        }
+
+        // Copies another store's column, translating its codes to ours
+        void copy(LocalCodes from, short[] source, short[] target, int offset, int length) {
+            short[] map = new short[from.count];
+            for (int code = 0; code < from.count; code++) {
+                map[code] = local(from.sharedOf[code]);
+            }
+            for (int i = 0; i < length; i++) {
+                int code = source[i];
+                target[offset + i] = (code < 0) ? (short) code : map[code];
+            }
+        }
+    }
+}
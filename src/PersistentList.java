@@ -0,0 +1,151 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list kept in chunks of up to CHUNK elements. Appending or
+ * replacing elements copies only the chunks involved (and the small chunk
+ * index), never the whole list, and every earlier version stays valid and
+ * unchanged.
+ */
+final class PersistentList<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int CHUNK = 1024;
+
+    private static final PersistentList<?> EMPTY = new PersistentList<>(new Object[0][], new int[0]);
+
+    private final Object[][] chunks;
+    private final int[] ends;          // ends[c] = number of elements in chunks 0..c
+
+    private PersistentList(Object[][] chunks, int[] ends) {
+        this.chunks = chunks;
+        this.ends = ends;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentList<T> empty() {
+        return (PersistentList<T>) EMPTY;
+    }
+
+    static <T> PersistentList<T> of(List<? extends T> values) {
+        return PersistentList.<T>empty().plusAll(values);
+    }
+
+    @Override
+    public int size() {
+        return (ends.length == 0) ? 0 : ends[ends.length - 1];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        int c = chunkOf(index);
+        return (T) chunks[c][index - start(c)];
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int chunk;
+            private int offset;
+
+            @Override
+            public boolean hasNext() {
+                while (chunk < chunks.length && offset == chunks[chunk].length) {
+                    chunk++;
+                    offset = 0;
+                }
+                return chunk < chunks.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return (T) chunks[chunk][offset++];
+            }
+        };
+    }
+
+    /**
+     * This list followed by values. The last chunk is topped up (as a
+     * copy) before new chunks are started.
+     */
+    PersistentList<T> plusAll(List<? extends T> values) {
+        if (values.isEmpty()) return this;
+
+        int from = 0;
+        int last = chunks.length - 1;
+        Object[] tail = null;
+        if (last >= 0 && chunks[last].length < CHUNK) {
+            int take = Math.min(CHUNK - chunks[last].length, values.size());
+            tail = Arrays.copyOf(chunks[last], chunks[last].length + take);
+            for (int i = 0; i < take; i++) {
+                tail[chunks[last].length + i] = values.get(i);
+            }
+            from = take;
+        }
+
+        int newChunks = (values.size() - from + CHUNK - 1) / CHUNK;
+        int keep = (tail != null) ? last : chunks.length;
+        Object[][] nextChunks = Arrays.copyOf(chunks, keep + ((tail != null) ? 1 : 0) + newChunks);
+        if (tail != null) nextChunks[last] = tail;
+
+        int c = keep + ((tail != null) ? 1 : 0);
+        for (int i = from; i < values.size(); i += CHUNK, c++) {
+            int n = Math.min(CHUNK, values.size() - i);
+            Object[] chunk = new Object[n];
+            for (int j = 0; j < n; j++) {
+                chunk[j] = values.get(i + j);
+            }
+            nextChunks[c] = chunk;
+        }
+        return new PersistentList<>(nextChunks, endsOf(nextChunks));
+    }
+
+    /**
+     * This list with the elements at indexes replaced by values (indexes
+     * in ascending order). Each affected chunk is copied once.
+     */
+    PersistentList<T> withAll(int[] indexes, List<? extends T> values) {
+        if (indexes.length == 0) return this;
+
+        Object[][] nextChunks = chunks.clone();
+        int copied = -1;
+        for (int i = 0; i < indexes.length; i++) {
+            int c = chunkOf(indexes[i]);
+            if (c != copied) {
+                nextChunks[c] = chunks[c].clone();
+                copied = c;
+            }
+            nextChunks[c][indexes[i] - start(c)] = values.get(i);
+        }
+        return new PersistentList<>(nextChunks, ends);
+    }
+
+    private int start(int chunk) {
+        return (chunk == 0) ? 0 : ends[chunk - 1];
+    }
+
+    private int chunkOf(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        // First chunk whose end is past index
+        int c = Arrays.binarySearch(ends, index + 1);
+        return (c >= 0) ? c : -c - 1;
+    }
+
+    private static int[] endsOf(Object[][] chunks) {
+        int[] ends = new int[chunks.length];
+        int total = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            total += chunks[c].length;
+            ends[c] = total;
+        }
+        return ends;
+    }
+}
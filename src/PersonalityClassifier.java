@@ -1,20 +1,72 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 public class PersonalityClassifier {
 
+    // Batches smaller than this are classified on the calling thread
+    private static final int PARALLEL_MIN_BATCH = 50_000;
+    private static final int ROWS_PER_TASK = 16_384;
+
+    private static final int MAX_SCORE = 100;
+
+    private static final Metrics.Counter CLASSIFIED = Metrics.counter("classify.participants");
+    private static final Metrics.Timer CLASSIFY_BATCH = Metrics.timer("classify.batch");
+
+    // Type (and its CodeDictionary code) for every scaled score 0..100
+    private static final String[] TYPE_BY_SCORE = new String[MAX_SCORE + 1];
+    private static final int[] TYPE_CODE_BY_SCORE = new int[MAX_SCORE + 1];
+
+    static {
+        for (int scaled = 0; scaled <= MAX_SCORE; scaled++) {
+            String type = "UNKNOWN";
+
+            if (scaled >= 90 && scaled <= 100) {
+                type = "LEADER";
+            } else if (scaled >= 70 && scaled <= 89) {
+                type = "BALANCED";
+            } else if (scaled >= 50 && scaled <= 69) {
+                type = "THINKER";
+            }
+
+            TYPE_BY_SCORE[scaled] = type;
+            TYPE_CODE_BY_SCORE[scaled] = CodeDictionary.TYPES.codeOf(type);
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public PersonalityClassifier() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public PersonalityClassifier(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Personality type for a scaled (0-100) score.
+     */
+    public static String typeOf(int scaled) {
+        return (scaled >= 0 && scaled <= MAX_SCORE) ? TYPE_BY_SCORE[scaled] : "UNKNOWN";
+    }
+
+    public static int typeCodeOf(int scaled) {
+        return (scaled >= 0 && scaled <= MAX_SCORE)
+                ? TYPE_CODE_BY_SCORE[scaled] : CodeDictionary.TYPE_UNKNOWN;
+    }
+
     public void classify(Participant participant) {
         if (participant == null) return;
 
         int scaled = participant.getPersonalityScoreScaled();
-        String type = "UNKNOWN";
-
-        if (scaled >= 90 && scaled <= 100) {
-            type = "LEADER";
-        } else if (scaled >= 70 && scaled <= 89) {
-            type = "BALANCED";
-        } else if (scaled >= 50 && scaled <= 69) {
-            type = "THINKER";
-        }
-
-        participant.setPersonalityType(type);
+        participant.setPersonalityType(typeOf(scaled), typeCodeOf(scaled));
+        CLASSIFIED.increment();
     }
 
     public void classifyFromRawScore(Participant participant, int rawTotal) {
@@ -22,4 +74,57 @@ public class PersonalityClassifier {
         participant.setPersonalityScore(rawTotal);
         classify(participant);
     }
+
+    /**
+     * Classify one participant on the shared pool.
+     */
+    public CompletableFuture<Participant> classifyAsync(Participant participant) {
+        return CompletableFuture.supplyAsync(() -> {
+            classify(participant);
+            return participant;
+        }, pool);
+    }
+
+    /**
+     * Classify a whole batch from their scaled scores. Large batches are
+     * split into slices and run on the shared pool.
+     */
+    public void classifyAll(List<Participant> participants) {
+        long began = System.nanoTime();
+        int n = participants.size();
+        if (n < PARALLEL_MIN_BATCH || pool.getParallelism() < 2) {
+            for (Participant p : participants) {
+                classify(p);
+            }
+            CLASSIFY_BATCH.recordSince(began);
+            return;
+        }
+
+        List<Participant> list = (participants instanceof RandomAccess)
+                ? participants : new ArrayList<>(participants);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < n; from += ROWS_PER_TASK) {
+            int start = from;
+            int end = Math.min(n, from + ROWS_PER_TASK);
+            tasks.add(() -> {
+                for (int i = start; i < end; i++) {
+                    classify(list.get(i));
+                }
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Personality classification interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Personality classification failed", e.getCause());
+        }
+        CLASSIFY_BATCH.recordSince(began);
+    }
 }
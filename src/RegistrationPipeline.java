@@ -0,0 +1,550 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Non-interactive registration from a feed of records, one per line, either
+ * JSON objects (JSONL) or rows in the participants CSV layout.
+ *
+ * A reader puts lines on a bounded queue and blocks while it is full, so a
+ * fast feed cannot run ahead of the workers. Workers validate each record,
+ * register it in the ParticipantRegistry (which turns away IDs and emails
+ * that are already taken).
+ * The calling thread collects the results, records rejects in a LoadReport,
+ * classifies accepted participants a batch at a time (classifyAll) and
+ * hands each batch to the commit callback, so the callback never runs
+ * concurrently with itself.
+ *
+ * Workers run on virtual threads when the JVM has them (Java 21+), otherwise
+ * on a small fixed pool of platform threads.
+ *
+ * JSONL records look like
+ * {"id":"P101","name":"Ann","email":"ann@uni.edu","game":"Chess","role":"Attacker","skill":7,"answers":[4,5,3,4,5]}
+ * with either "answers" (five survey scores 1-5) or "score" (0-100).
+ */
+public class RegistrationPipeline {
+
+    public enum Format { JSONL, CSV }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final Metrics.Timer FEED = Metrics.timer("registration.feed");
+
+    private static final int CSV_COLUMNS = 8;
+    private static final int SURVEY_QUESTIONS = 5;
+
+    private final PersonalityClassifier classifier;
+    private final ParticipantRegistry registry;
+    private final Consumer<List<Participant>> commit;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final int workers;
+
+    public RegistrationPipeline(PersonalityClassifier classifier, ParticipantRegistry registry,
+                                Consumer<List<Participant>> commit) {
+        this(classifier, registry, commit, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    public RegistrationPipeline(PersonalityClassifier classifier, ParticipantRegistry registry,
+                                Consumer<List<Participant>> commit, int queueCapacity, int batchSize) {
+        if (queueCapacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Queue capacity and batch size must be at least 1.");
+        }
+        this.classifier = classifier;
+        this.registry = registry;
+        this.commit = commit;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.workers = Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Read the whole feed. A null format is detected from the first
+     * non-blank line ('{' means JSONL). Returns the report; the source name
+     * is only used in it.
+     */
+    public LoadReport run(Reader in, Format format, String source) throws IOException {
+        long start = System.nanoTime();
+        LoadReport report = new LoadReport(source);
+        BufferedReader reader = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+
+        String first = reader.readLine();
+        int lineNumber = 1;
+        while (first != null && first.trim().isEmpty()) {
+            first = reader.readLine();
+            lineNumber++;
+        }
+        if (first == null) {
+            return report;
+        }
+        if (format == null) {
+            format = first.trim().startsWith("{") ? Format.JSONL : Format.CSV;
+        }
+
+        if (format == Format.CSV) {
+            String headerError = CsvManager.checkHeader(first);
+            if (headerError != null) {
+                report.setHeaderError(headerError);
+                return report;
+            }
+            first = null;
+        }
+
+        BlockingQueue<Line> lines = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(queueCapacity);
+        IOException[] readError = new IOException[1];
+        Format recordFormat = format;
+
+        ExecutorService executor = WorkerThreads.newExecutor("registration-worker", workers + 1);
+        try {
+            String pending = first;
+            int pendingLine = lineNumber;
+            executor.execute(() -> readLines(reader, pending, pendingLine, lines, readError));
+            for (int w = 0; w < workers; w++) {
+                executor.execute(() -> work(recordFormat, lines, results));
+            }
+
+            collect(results, report);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Registration interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (readError[0] != null) {
+            throw readError[0];
+        }
+        FEED.recordSince(start);
+        report.addToMetrics();
+        return report;
+    }
+
+    /**
+     * Validate, register and classify one record on the calling thread,
+     * without the queue or the commit callback. Returns the participant,
+     * or null with the reason recorded in the report.
+     */
+    Participant registerOne(String record, Format format, LoadReport report) {
+        Result r = processLine(format, new Line(1, record));
+        if (r.scored) {
+            classifier.classify(r.participant);
+        }
+        report.addRows(1, (r.participant != null) ? 1 : 0);
+        if (r.participant == null) {
+            report.addRejected(r.reason, 1);
+            report.addExample(r.reason, 1, record);
+        }
+        return r.participant;
+    }
+
+    private void readLines(BufferedReader reader, String first, int firstLine,
+                           BlockingQueue<Line> lines, IOException[] readError) {
+        try {
+            try {
+                int number = firstLine;
+                if (first != null) {
+                    lines.put(new Line(number, first));
+                }
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    number++;
+                    if (!text.trim().isEmpty()) {
+                        lines.put(new Line(number, text));
+                    }
+                }
+            } catch (IOException e) {
+                readError[0] = e;
+            } finally {
+                for (int w = 0; w < workers; w++) {
+                    lines.put(Line.END);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work(Format format, BlockingQueue<Line> lines, BlockingQueue<Result> results) {
+        try {
+            try {
+                Line line;
+                while ((line = lines.take()) != Line.END) {
+                    results.put(processLine(format, line));
+                }
+            } catch (InterruptedException e) {
+                // Only shutdownNow interrupts, and by then nobody collects
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                // Also when a worker dies, or collect would wait for it forever
+                if (!Thread.currentThread().isInterrupted()) {
+                    results.put(Result.END);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A record the checks cannot cope with is rejected, not fatal to the feed
+    private Result processLine(Format format, Line line) {
+        try {
+            return process(format, line);
+        } catch (RuntimeException | StackOverflowError e) {
+            return Result.rejected(line, LoadReport.Reason.INVALID_RECORD);
+        }
+    }
+
+    private void collect(BlockingQueue<Result> results, LoadReport report) throws InterruptedException {
+        List<Participant> batch = new ArrayList<>(batchSize);
+        List<Participant> scored = new ArrayList<>(batchSize);
+        long read = 0;
+        long loaded = 0;
+        int finished = 0;
+
+        while (finished < workers) {
+            Result r = results.take();
+            if (r == Result.END) {
+                finished++;
+                continue;
+            }
+
+            read++;
+            if (r.participant != null) {
+                batch.add(r.participant);
+                if (r.scored) {
+                    scored.add(r.participant);
+                }
+                loaded++;
+                if (batch.size() == batchSize) {
+                    commitBatch(batch, scored);
+                    batch = new ArrayList<>(batchSize);
+                    scored.clear();
+                }
+            } else {
+                report.addRejected(r.reason, r.line.number);
+                report.addExample(r.reason, r.line.number, r.line.text);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            commitBatch(batch, scored);
+        }
+        report.addRows(read, loaded);
+    }
+
+    // Rows that gave a score are typed from it; rows that gave a type keep it
+    private void commitBatch(List<Participant> batch, List<Participant> scored) {
+        classifier.classifyAll(scored);
+        commit.accept(batch);
+    }
+
+    private Result process(Format format, Line line) {
+        String id, name, email, game, role, skillText;
+        String type = null;
+        int scaledScore = -1;
+        int rawScore = -1;
+
+        if (format == Format.CSV) {
+            // Checked like MappedCsvLoader: without a 0-100 score the type column is used as written
+            String[] f = line.text.split(",", -1);
+            if (f.length < CSV_COLUMNS) {
+                return Result.rejected(line, LoadReport.Reason.TOO_FEW_COLUMNS);
+            }
+            id = f[0].trim();
+            name = f[1].trim();
+            email = f[2].trim();
+            game = f[3].trim();
+            skillText = f[4].trim();
+            role = f[5].trim();
+            Integer score = parseInt(f[6].trim());
+            if (score != null && score >= 0 && score <= 100) {
+                scaledScore = score;
+            } else {
+                type = f[7].trim();
+                if (type.isEmpty()) {
+                    return Result.rejected(line, LoadReport.Reason.MISSING_FIELDS);
+                }
+            }
+        } else {
+            Map<String, Object> record;
+            try {
+                record = Json.parseObject(line.text);
+            } catch (IllegalArgumentException e) {
+                return Result.rejected(line, LoadReport.Reason.INVALID_RECORD);
+            }
+            id = text(record.get("id"));
+            name = text(record.get("name"));
+            email = text(record.get("email"));
+            game = text(record.get("game"));
+            role = text(record.get("role"));
+            skillText = text(record.get("skill"));
+
+            Object answers = record.get("answers");
+            Object score = record.get("score");
+            if (answers != null) {
+                rawScore = surveyTotal(answers);
+            } else if (score != null) {
+                Integer value = parseInt(text(score));
+                scaledScore = (value != null && value >= 0 && value <= 100) ? value : -2;
+            }
+            if (rawScore == -2 || scaledScore == -2) {
+                return Result.rejected(line, LoadReport.Reason.INVALID_SCORE);
+            }
+            if (rawScore < 0 && scaledScore < 0) {
+                return Result.rejected(line, LoadReport.Reason.MISSING_FIELDS);
+            }
+        }
+
+        if (id.isEmpty() || name.isEmpty() || game.isEmpty() || role.isEmpty() || skillText.isEmpty()) {
+            return Result.rejected(line, LoadReport.Reason.MISSING_FIELDS);
+        }
+
+        Integer skill = parseInt(skillText);
+        if (skill == null) {
+            return Result.rejected(line, LoadReport.Reason.INVALID_SKILL);
+        }
+        if (skill < 1 || skill > 10) {
+            return Result.rejected(line, LoadReport.Reason.SKILL_OUT_OF_RANGE);
+        }
+
+        // Same ID form as registerNewParticipant: a bare number gets the P prefix
+        if (id.chars().allMatch(Character::isDigit)) {
+            id = "P" + id;
+        }
+        Participant p = new Participant(id, name);
+        if (!email.isEmpty()) p.setEmail(email);
+        p.setPreferredGame(CodeDictionary.GAMES.valueOf(CodeDictionary.GAMES.codeOf(game)));
+        p.setPreferredRole(CodeDictionary.ROLES.valueOf(CodeDictionary.ROLES.codeOf(role)));
+        p.setSkillRating(skill);
+        if (type != null) {
+            p.setPersonalityScoreScaled(0);
+            p.setPersonalityType(type.toUpperCase());
+        } else if (rawScore >= 0) {
+            p.setPersonalityScore(rawScore);
+        } else {
+            p.setPersonalityScoreScaled(scaledScore);
+        }
+
+        LoadReport.Reason duplicate = registry.register(p);
+        if (duplicate != null) {
+            return Result.rejected(line, duplicate);
+        }
+        return Result.accepted(line, p, type == null);
+    }
+
+    // Sum of the five survey answers, or -2 when they are not five scores 1-5
+    private static int surveyTotal(Object answers) {
+        if (!(answers instanceof List) || ((List<?>) answers).size() != SURVEY_QUESTIONS) {
+            return -2;
+        }
+        int total = 0;
+        for (Object a : (List<?>) answers) {
+            Integer value = parseInt(text(a));
+            if (value == null || value < 1 || value > 5) return -2;
+            total += value;
+        }
+        return total;
+    }
+
+    private static String text(Object value) {
+        return (value == null) ? "" : value.toString().trim();
+    }
+
+    private static Integer parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static final class Line {
+        static final Line END = new Line(-1, null);
+
+        final int number;
+        final String text;
+
+        Line(int number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+    }
+
+    private static final class Result {
+        static final Result END = new Result(null, null, false, null);
+
+        final Line line;
+        final Participant participant;
+        // Still to be classified from its score
+        final boolean scored;
+        final LoadReport.Reason reason;
+
+        private Result(Line line, Participant participant, boolean scored, LoadReport.Reason reason) {
+            this.line = line;
+            this.participant = participant;
+            this.scored = scored;
+            this.reason = reason;
+        }
+
+        static Result accepted(Line line, Participant p, boolean scored) {
+            return new Result(line, p, scored, null);
+        }
+
+        static Result rejected(Line line, LoadReport.Reason reason) {
+            return new Result(line, null, false, reason);
+        }
+    }
+
+    /**
+     * Just enough JSON for one flat record per line: strings, numbers,
+     * booleans, null and arrays of those (nested at most MAX_DEPTH deep).
+     * Throws IllegalArgumentException on anything else.
+     */
+    static final class Json {
+        private static final int MAX_DEPTH = 16;
+
+        private final String s;
+        private int pos;
+        private int depth;
+
+        private Json(String s) {
+            this.s = s;
+        }
+
+        static Map<String, Object> parseObject(String text) {
+            Json json = new Json(text);
+            json.skipSpace();
+            Map<String, Object> object = json.object();
+            json.skipSpace();
+            if (json.pos != text.length()) throw json.error();
+            return object;
+        }
+
+        private Map<String, Object> object() {
+            expect('{');
+            Map<String, Object> map = new LinkedHashMap<>();
+            skipSpace();
+            if (peek() == '}') {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipSpace();
+                String key = string();
+                skipSpace();
+                expect(':');
+                skipSpace();
+                map.put(key, value());
+                skipSpace();
+                char c = next();
+                if (c == '}') return map;
+                if (c != ',') throw error();
+            }
+        }
+
+        private Object value() {
+            char c = peek();
+            if (c == '"') return string();
+            if (c == '[') {
+                if (++depth > MAX_DEPTH) throw error();
+                List<Object> list = array();
+                depth--;
+                return list;
+            }
+            if (s.startsWith("true", pos)) { pos += 4; return Boolean.TRUE; }
+            if (s.startsWith("false", pos)) { pos += 5; return Boolean.FALSE; }
+            if (s.startsWith("null", pos)) { pos += 4; return null; }
+            return number();
+        }
+
+        private List<Object> array() {
+            expect('[');
+            List<Object> list = new ArrayList<>();
+            skipSpace();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                skipSpace();
+                list.add(value());
+                skipSpace();
+                char c = next();
+                if (c == ']') return list;
+                if (c != ',') throw error();
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char e = next();
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > s.length()) throw error();
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error();
+                        }
+                        pos += 4;
+                        break;
+                    default: sb.append(e);
+                }
+            }
+        }
+
+        private String number() {
+            int start = pos;
+            while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) pos++;
+            if (pos == start) throw error();
+            return s.substring(start, pos);
+        }
+
+        private void skipSpace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        private char peek() {
+            if (pos >= s.length()) throw error();
+            return s.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char c) {
+            if (next() != c) throw error();
+        }
+
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException("Invalid JSON at position " + pos);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The roster (participants, formed teams and the TeamMaintainer keeping
+ * those teams up to date), published as immutable, versioned snapshots.
+ *
+ * Changes are made one at a time and each one ends by publishing a new
+ * Snapshot through an AtomicReference. Readers call current() and see one
+ * consistent version without taking a lock, for as long as they hold it.
+ * Snapshot lists are PersistentLists and snapshot teams are frozen copies,
+ * so a change copies only the list chunks and teams it touched.
+ *
+ * Participants and teams keep their slot in those lists: a withdrawal or a
+ * dissolved team leaves an empty slot (skipped by readers) instead of
+ * shifting everything after it, so a change never costs a pass over the
+ * roster. Empty participant slots are squeezed out once they outnumber the
+ * participants.
+ *
+ * Team formation runs on a snapshot, outside the store, and is installed
+ * with installTeams.
+ */
+public class RosterStore {
+
+    // Fewer empty participant slots than this are never squeezed out
+    private static final int MIN_COMPACT_SLOTS = 1024;
+
+    /**
+     * One version of the roster. Nothing reachable from it changes.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final PersistentList<Participant> participantSlots;
+        private final PersistentList<Team> teamSlots;         // by team number
+        private final List<Participant> participants;
+        private final List<Team> teams;
+        private final int teamSize;
+        private final int waitingCount;
+        private final long withdrawals;
+
+        private Snapshot(long version, PersistentList<Participant> participantSlots, int participantCount,
+                         PersistentList<Team> teamSlots, int teamCount,
+                         int teamSize, int waitingCount, long withdrawals) {
+            this.version = version;
+            this.participantSlots = participantSlots;
+            this.teamSlots = teamSlots;
+            this.participants = new Occupied<>(participantSlots, participantCount);
+            this.teams = new Occupied<>(teamSlots, teamCount);
+            this.teamSize = teamSize;
+            this.waitingCount = waitingCount;
+            this.withdrawals = withdrawals;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<Participant> getParticipants() {
+            return participants;
+        }
+
+        /**
+         * Read-only copies of the teams (empty until teams are formed).
+         */
+        public List<Team> getTeams() {
+            return teams;
+        }
+
+        /**
+         * Team size of the installed teams (0 until teams are formed).
+         */
+        public int getTeamSize() {
+            return teamSize;
+        }
+
+        public int getWaitingCount() {
+            return waitingCount;
+        }
+    }
+
+    /**
+     * The filled slots of a slot list, in slot order. Indexed reads on a
+     * list with empty slots pack it once, on first use.
+     */
+    private static final class Occupied<T> extends AbstractList<T> implements RandomAccess {
+        private final PersistentList<T> slots;
+        private final int size;
+        private volatile Object[] packed;
+
+        Occupied(PersistentList<T> slots, int size) {
+            this.slots = slots;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (size == slots.size()) return slots.get(index);
+
+            Objects.checkIndex(index, size);
+            Object[] values = packed;
+            if (values == null) {
+                values = new Object[size];
+                int i = 0;
+                for (T value : slots) {
+                    if (value != null) values[i++] = value;
+                }
+                packed = values;
+            }
+            return (T) values[index];
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            Iterator<T> it = slots.iterator();
+            return new Iterator<T>() {
+                private T next = advance();
+
+                private T advance() {
+                    while (it.hasNext()) {
+                        T value = it.next();
+                        if (value != null) return value;
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public T next() {
+                    if (next == null) throw new NoSuchElementException();
+                    T value = next;
+                    next = advance();
+                    return value;
+                }
+            };
+        }
+    }
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(
+            new Snapshot(0, PersistentList.empty(), 0, PersistentList.empty(), 0, 0, 0, 0));
+
+    // Guarded by this
+    private TeamMaintainer maintainer;
+    private final Map<Participant, Integer> slotOf = new IdentityHashMap<>();
+
+    public Snapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Adds registered participants (and places them into the teams, if
+     * formed). Returns how many got a team.
+     */
+    public synchronized int add(List<Participant> added) {
+        if (added.isEmpty()) return 0;
+
+        Snapshot prev = current.get();
+        int placed = (maintainer != null) ? maintainer.addAll(added) : 0;
+        publish(appended(prev, added), prev.participants.size() + added.size(), prev.withdrawals);
+        return placed;
+    }
+
+    /**
+     * Adds one participant and returns the (snapshot copy of the) team
+     * they were placed in, or null.
+     */
+    public synchronized Team add(Participant p) {
+        Snapshot prev = current.get();
+        Team team = (maintainer != null) ? maintainer.add(p) : null;
+        Snapshot next = publish(appended(prev, List.of(p)), prev.participants.size() + 1, prev.withdrawals);
+        return (team != null) ? next.teamSlots.get(maintainer.teamNumberOf(p)) : null;
+    }
+
+    /**
+     * Removes a participant and repairs their team. Returns the team they
+     * were in (as it was before), or null.
+     */
+    public synchronized Team withdraw(Participant p) {
+        Snapshot prev = current.get();
+        Integer slot = slotOf.remove(p);
+        if (slot == null) return null;
+
+        Team team = null;
+        if (maintainer != null) {
+            int number = maintainer.teamNumberOf(p);
+            if (number >= 0) team = prev.teamSlots.get(number);
+            maintainer.withdraw(p);
+        }
+
+        int count = prev.participants.size() - 1;
+        PersistentList<Participant> slots = prev.participantSlots.withAll(new int[] {slot},
+                Collections.singletonList(null));
+        if (slots.size() - count > Math.max(count, MIN_COMPACT_SLOTS)) {
+            slots = compacted(new Occupied<>(slots, count));
+        }
+        publish(slots, count, prev.withdrawals + 1);
+        return team;
+    }
+
+    /**
+     * Makes formed (built by builder from basis) the current teams, to be
+     * maintained with the same builder from now on. Participants added
+     * since basis start out waiting. Returns false, leaving the store
+     * unchanged, if someone withdrew since basis: they may be in formed, so
+     * form again from a new snapshot.
+     */
+    public synchronized boolean installTeams(Snapshot basis, TeamBuilder builder, List<Team> formed) {
+        Snapshot prev = current.get();
+        if (prev.withdrawals != basis.withdrawals) return false;
+
+        maintainer = builder.maintain(prev.participants, formed);
+        maintainer.drainTouched();
+
+        List<Team> copies = new ArrayList<>(maintainer.teamSlots());
+        for (int number = 0; number < maintainer.teamSlots(); number++) {
+            copies.add(maintainer.teamAt(number).frozenCopy());
+        }
+
+        current.set(new Snapshot(prev.version + 1, prev.participantSlots, prev.participants.size(),
+                PersistentList.of(copies), maintainer.getTeamCount(),
+                builder.getTeamSize(), maintainer.getWaitingCount(), prev.withdrawals));
+        return true;
+    }
+
+    private PersistentList<Participant> appended(Snapshot prev, List<Participant> added) {
+        int slot = prev.participantSlots.size();
+        for (Participant p : added) {
+            slotOf.put(p, slot++);
+        }
+        return prev.participantSlots.plusAll(added);
+    }
+
+    // The participants without empty slots; every slot number changes
+    private PersistentList<Participant> compacted(List<Participant> participants) {
+        slotOf.clear();
+        int slot = 0;
+        for (Participant p : participants) {
+            slotOf.put(p, slot++);
+        }
+        return PersistentList.of(participants);
+    }
+
+    private Snapshot publish(PersistentList<Participant> participantSlots, int participantCount, long withdrawals) {
+        Snapshot prev = current.get();
+        PersistentList<Team> teamSlots = prev.teamSlots;
+        int teamCount = prev.teams.size();
+        int waiting = 0;
+        if (maintainer != null) {
+            teamSlots = updatedTeams(prev.teamSlots);
+            teamCount = maintainer.getTeamCount();
+            waiting = maintainer.getWaitingCount();
+        }
+        Snapshot next = new Snapshot(prev.version + 1, participantSlots, participantCount,
+                teamSlots, teamCount, prev.teamSize, waiting, withdrawals);
+        current.set(next);
+        return next;
+    }
+
+    // Fresh copies of the teams the maintainer changed (an empty slot for a
+    // dissolved one); the rest are shared with the previous version
+    private PersistentList<Team> updatedTeams(PersistentList<Team> published) {
+        int[] numbers = maintainer.drainTouched();
+        List<Team> copies = new ArrayList<>(numbers.length);
+        for (int number : numbers) {
+            Team team = maintainer.teamAt(number);
+            copies.add((team != null) ? team.frozenCopy() : null);
+        }
+        return published.withAll(numbers, copies);
+    }
+}
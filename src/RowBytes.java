@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer for formatting CSV rows without building Strings.
+ * Text is written as UTF-8 (ASCII is copied as is). Reusable via clear().
+ */
+final class RowBytes {
+    private byte[] data;
+    private int length;
+
+    RowBytes(int capacity) {
+        data = new byte[Math.max(capacity, 64)];
+    }
+
+    int length() {
+        return length;
+    }
+
+    RowBytes clear() {
+        length = 0;
+        return this;
+    }
+
+    RowBytes put(char c) {
+        ensure(1);
+        data[length++] = (byte) c;
+        return this;
+    }
+
+    RowBytes put(byte[] b) {
+        ensure(b.length);
+        System.arraycopy(b, 0, data, length, b.length);
+        length += b.length;
+        return this;
+    }
+
+    // null is written as "null", like string concatenation
+    RowBytes put(String s) {
+        if (s == null) s = "null";
+
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                length -= i;
+                return put(s.getBytes(StandardCharsets.UTF_8));
+            }
+            data[length++] = (byte) c;
+        }
+        return this;
+    }
+
+    RowBytes put(long value) {
+        return putPadded(value, 1);
+    }
+
+    RowBytes putPadded(long value, int digits) {
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        int n = 1;
+        for (long v = value; v >= 10; v /= 10) n++;
+        int width = Math.max(n, digits);
+
+        ensure(width);
+        int end = length + width;
+        for (int i = end - 1; i >= length; i--) {
+            data[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length = end;
+        return this;
+    }
+
+    byte[] array() {
+        return data;
+    }
+
+    ByteBuffer toBuffer() {
+        return ByteBuffer.wrap(data, 0, length);
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+        }
+    }
+}
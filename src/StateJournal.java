@@ -0,0 +1,426 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of the changes made to the in-memory roster:
+ * participants added (registration, CSV load, bulk feed), participants
+ * withdrawn and teams formed.
+ *
+ * Every record is framed as length, CRC32C and payload. An append returns
+ * once the record is on disk; appenders that arrive while another thread
+ * is forcing the file wait for the next force, so concurrent appends share
+ * one fsync. Once the journal grows past compactBytes the owner is asked
+ * (needsCompaction) to write a checkpoint of its whole state, after which
+ * the journal starts over empty. Recovery reads the checkpoint and replays
+ * only the journal written since, so it does not grow with history.
+ *
+ * Both files start with a generation number. A checkpoint of generation G
+ * is written before the journal of generation G replaces the old one, so
+ * after a crash in between the stale journal is recognised and skipped. A
+ * torn record at the end of the journal (crash during an append) is cut
+ * off on recovery.
+ */
+public class StateJournal implements AutoCloseable {
+
+    /**
+     * Receives the recovered changes in their original order.
+     */
+    public interface Listener {
+        void added(List<Participant> participants);
+
+        void withdrawn(String id);
+
+        void formed(int teamSize, List<Team> teams);
+    }
+
+    public static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String CHECKPOINT_FILE = "checkpoint.log";
+
+    private static final int MAGIC = 0x544D4A4C;       // "TMJL"
+    private static final int HEADER_BYTES = 12;        // magic + generation
+    private static final int MAX_RECORD_BYTES = 256 << 20;
+
+    // A large add is split into records of at most this many participants
+    private static final int ADD_CHUNK = 8192;
+
+    private static final byte ADD = 1;
+    private static final byte ADD_LAST = 2;            // last chunk of one add
+    private static final byte WITHDRAW = 3;
+    private static final byte FORMED = 4;
+
+    private final Path dir;
+    private final long compactBytes;
+
+    private final Object appendLock = new Object();
+    private final Object forceLock = new Object();
+    private FileChannel channel;
+    private long generation;
+    private long written;            // records appended (not necessarily forced)
+    private volatile long durable;   // records known to be on disk
+
+    private StateJournal(Path dir, long compactBytes) {
+        this.dir = dir;
+        this.compactBytes = compactBytes;
+    }
+
+    /**
+     * Open (creating if needed) the journal in dir and replay the saved
+     * state into the listener.
+     */
+    public static StateJournal open(Path dir, Listener listener) throws IOException {
+        return open(dir, DEFAULT_COMPACT_BYTES, listener);
+    }
+
+    public static StateJournal open(Path dir, long compactBytes, Listener listener) throws IOException {
+        Files.createDirectories(dir);
+        StateJournal journal = new StateJournal(dir, compactBytes);
+        journal.recover(listener);
+        return journal;
+    }
+
+    public void recordAdded(List<Participant> participants) throws IOException {
+        if (participants.isEmpty()) return;
+
+        append(encodeAdd(participants));
+    }
+
+    public void recordWithdrawn(String id) throws IOException {
+        Payload out = new Payload(WITHDRAW);
+        out.writeUTF(id);
+        append(List.of(out.toBytes()));
+    }
+
+    public void recordFormed(int teamSize, List<Team> teams) throws IOException {
+        append(List.of(encodeFormed(teamSize, teams)));
+    }
+
+    public boolean needsCompaction() throws IOException {
+        synchronized (appendLock) {
+            return channel.size() > compactBytes;
+        }
+    }
+
+    /**
+     * Replace the journal with a checkpoint of the given state. The caller
+     * must not change the state while this runs.
+     */
+    public void compact(List<Participant> participants, int teamSize, List<Team> teams) throws IOException {
+        List<byte[]> records = encodeAdd(participants);
+        if (teams != null && !teams.isEmpty()) {
+            records.add(encodeFormed(teamSize, teams));
+        }
+
+        // Same lock order as append, so no force runs on the old channel
+        synchronized (forceLock) {
+            synchronized (appendLock) {
+                long next = generation + 1;
+                writeFile(dir.resolve(CHECKPOINT_FILE), next, records);
+                writeFile(dir.resolve(JOURNAL_FILE), next, List.of());
+
+                channel.close();
+                channel = openForAppend(dir.resolve(JOURNAL_FILE));
+                generation = next;
+                durable = written;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            channel.close();
+        }
+    }
+
+    // ---------------- appending ----------------
+
+    private void append(List<byte[]> records) throws IOException {
+        long mine;
+        synchronized (appendLock) {
+            for (byte[] payload : records) {
+                writeFully(channel, frame(payload));
+            }
+            mine = ++written;
+        }
+
+        // Group commit: whoever gets here first forces everything written
+        // so far; the others find their record already durable
+        if (durable >= mine) return;
+        synchronized (forceLock) {
+            if (durable >= mine) return;
+            long target;
+            synchronized (appendLock) {
+                target = written;
+            }
+            channel.force(false);
+            durable = target;
+        }
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer buf = ByteBuffer.allocate(8 + payload.length);
+        buf.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return buf;
+    }
+
+    private static FileChannel openForAppend(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static void writeFile(Path target, long generation, List<byte[]> records) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, header(generation));
+            for (byte[] payload : records) {
+                writeFully(out, frame(payload));
+            }
+            out.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static ByteBuffer header(long generation) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES);
+        buf.putInt(MAGIC).putLong(generation).flip();
+        return buf;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    // ---------------- recovery ----------------
+
+    private void recover(Listener listener) throws IOException {
+        Path checkpoint = dir.resolve(CHECKPOINT_FILE);
+        Path journal = dir.resolve(JOURNAL_FILE);
+        Map<String, Participant> byId = new HashMap<>();
+
+        long checkpointGeneration = 0;
+        if (Files.exists(checkpoint)) {
+            try (FileChannel in = FileChannel.open(checkpoint, StandardOpenOption.READ)) {
+                checkpointGeneration = readHeader(in);
+                if (checkpointGeneration < 0) {
+                    throw new IOException("Journal checkpoint is damaged: " + checkpoint);
+                }
+                if (replay(in, listener, byId) != in.size()) {
+                    throw new IOException("Journal checkpoint is damaged: " + checkpoint);
+                }
+            }
+        }
+
+        long journalGeneration = -1;
+        if (Files.exists(journal)) {
+            try (FileChannel in = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                journalGeneration = readHeader(in);
+                if (journalGeneration == checkpointGeneration) {
+                    long end = replay(in, listener, byId);
+                    if (end < in.size()) {
+                        in.truncate(end);
+                        in.force(true);
+                    }
+                }
+            }
+        }
+
+        // Missing, damaged or older than the checkpoint: start it afresh
+        if (journalGeneration != checkpointGeneration) {
+            writeFile(journal, checkpointGeneration, List.of());
+        }
+        generation = checkpointGeneration;
+        channel = openForAppend(journal);
+    }
+
+    private static long readHeader(FileChannel in) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES);
+        while (buf.hasRemaining() && in.read(buf) >= 0) {
+            // keep reading
+        }
+        if (buf.hasRemaining()) return -1;
+        buf.flip();
+        return (buf.getInt() == MAGIC) ? buf.getLong() : -1;
+    }
+
+    /**
+     * Apply every intact record after the header. Returns the position just
+     * after the last intact record.
+     */
+    private static long replay(FileChannel in, Listener listener, Map<String, Participant> byId)
+            throws IOException {
+        long position = HEADER_BYTES;
+        long size = in.size();
+        ByteBuffer frame = ByteBuffer.allocate(8);
+        List<Participant> pending = new ArrayList<>();
+
+        while (position + 8 <= size) {
+            frame.clear();
+            readFully(in, frame, position);
+            frame.flip();
+            int length = frame.getInt();
+            int checksum = frame.getInt();
+            if (length < 1 || length > MAX_RECORD_BYTES || position + 8 + length > size) break;
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(in, payload, position + 8);
+            CRC32C crc = new CRC32C();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) break;
+
+            apply(payload.array(), listener, byId, pending);
+            position += 8 + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (in.read(buf, position + buf.position()) < 0) break;
+        }
+    }
+
+    private static void apply(byte[] payload, Listener listener, Map<String, Participant> byId,
+                              List<Participant> pending) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte kind = in.readByte();
+
+        if (kind == ADD || kind == ADD_LAST) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Participant p = readParticipant(in);
+                pending.add(p);
+                byId.put(p.getId(), p);
+            }
+            if (kind == ADD_LAST) {
+                listener.added(new ArrayList<>(pending));
+                pending.clear();
+            }
+        } else if (kind == WITHDRAW) {
+            String id = in.readUTF();
+            byId.remove(id);
+            listener.withdrawn(id);
+        } else if (kind == FORMED) {
+            int teamSize = in.readInt();
+            int count = in.readInt();
+            List<Team> teams = new ArrayList<>(count);
+            for (int t = 0; t < count; t++) {
+                Team team = new Team(in.readUTF());
+                int members = in.readInt();
+                for (int m = 0; m < members; m++) {
+                    team.addMember(byId.get(in.readUTF()));
+                }
+                teams.add(team);
+            }
+            listener.formed(teamSize, teams);
+        }
+    }
+
+    // ---------------- encoding ----------------
+
+    private static List<byte[]> encodeAdd(List<Participant> participants) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        for (int from = 0; from < participants.size(); from += ADD_CHUNK) {
+            int to = Math.min(participants.size(), from + ADD_CHUNK);
+            records.add(encodeAdd(participants.subList(from, to), to == participants.size()));
+        }
+        return records;
+    }
+
+    private static byte[] encodeAdd(List<Participant> chunk, boolean last) throws IOException {
+        Payload out = new Payload(last ? ADD_LAST : ADD);
+        out.writeInt(chunk.size());
+        for (Participant p : chunk) {
+            out.writeUTF(p.getId());
+            out.writeUTF(p.getName());
+            writeNullable(out, p.getEmail());
+            writeNullable(out, p.getPreferredGame());
+            writeNullable(out, p.getPreferredRole());
+            out.writeByte(p.getSkillRating());
+            out.writeByte(p.getPersonalityScoreRaw());
+            out.writeByte(p.getPersonalityScoreScaled());
+            writeNullable(out, p.getPersonalityType());
+        }
+        return out.toBytes();
+    }
+
+    private static Participant readParticipant(DataInputStream in) throws IOException {
+        Participant p = new Participant(in.readUTF(), in.readUTF());
+        p.setEmail(readNullable(in));
+        p.setPreferredGame(readNullable(in));
+        p.setPreferredRole(readNullable(in));
+        p.setSkillRating(in.readByte());
+        int raw = in.readByte();
+        int scaled = in.readByte();
+        if (raw > 0) {
+            p.setPersonalityScore(raw);
+        } else {
+            p.setPersonalityScoreScaled(scaled);
+        }
+        String type = readNullable(in);
+        if (type != null) {
+            p.setPersonalityType(type);
+        }
+        return p;
+    }
+
+    private static byte[] encodeFormed(int teamSize, List<Team> teams) throws IOException {
+        Payload out = new Payload(FORMED);
+        out.writeInt(teamSize);
+        out.writeInt(teams.size());
+        for (Team team : teams) {
+            out.writeUTF(team.getTeamName());
+            out.writeInt(team.getSize());
+            for (Participant member : team.getMembers()) {
+                out.writeUTF(member.getId());
+            }
+        }
+        return out.toBytes();
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static final class Payload extends DataOutputStream {
+        Payload(byte kind) throws IOException {
+            super(new ByteArrayOutputStream());
+            writeByte(kind);
+        }
+
+        byte[] toBytes() {
+            return ((ByteArrayOutputStream) out).toByteArray();
+        }
+    }
+}
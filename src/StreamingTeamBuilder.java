@@ -0,0 +1,323 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Team formation for rosters that do not fit in memory.
+ *
+ * Participants are pulled from an iterator and spilled to temp files, one
+ * run per (personality, skill) pair. Skill is a small bounded number, so
+ * each run is already sorted and reading the runs from the highest skill
+ * down is the merge. The merged leaders, thinkers and others are dealt
+ * round-robin into batches small enough for the memory budget (so every
+ * batch has the skill profile of the whole event), and each batch is formed
+ * by TeamBuilder under the given FormationLimits. Finished teams go
+ * straight to the sink.
+ *
+ * The phases run one after another, and each keeps within the budget: file
+ * buffers are sized from it, at most MAX_OPEN_BATCHES batch files are
+ * written at a time (with more batches, the runs are read once per group of
+ * batches), and while spilling, the run buffers share it with the rows read
+ * ahead by the source. A CSV source should therefore be opened with windows
+ * of inputWindowBytes().
+ *
+ * When everything fits in one batch the result is the same as
+ * TeamBuilder.buildTeams on the full list.
+ */
+public class StreamingTeamBuilder {
+
+    // Rough heap cost of one participant while its batch is being formed
+    public static final int BYTES_PER_PARTICIPANT = 512;
+
+    private static final int LEADERS = 0;
+    private static final int THINKERS = 1;
+    private static final int OTHERS = 2;
+    private static final int SKILL_LEVELS = Byte.MAX_VALUE + 1;
+
+    private static final int MAX_BUFFER = 64 * 1024;
+    private static final int MIN_BUFFER = 512;
+    private static final int MAX_OPEN_BATCHES = 64;
+
+    // Shortest participants CSV line worth planning for, and the window
+    // range the loader is given (it always reads at least one whole line)
+    private static final int MIN_ROW_BYTES = 32;
+    private static final long MIN_WINDOW = 4096;
+    private static final long MAX_WINDOW = 16L << 20;
+
+    public interface TeamSink {
+        void accept(Team team) throws IOException;
+    }
+
+    private final int teamSize;
+    private final FormationLimits limits;
+    private final long memoryBudgetBytes;
+    private final Path tempDir;
+
+    public StreamingTeamBuilder(int teamSize, long memoryBudgetBytes, Path tempDir) {
+        this(teamSize, FormationLimits.DEFAULT, memoryBudgetBytes, tempDir);
+    }
+
+    public StreamingTeamBuilder(int teamSize, FormationLimits limits, long memoryBudgetBytes, Path tempDir) {
+        if (teamSize < 2) {
+            throw new IllegalArgumentException("Team size must be at least 2.");
+        }
+        if (memoryBudgetBytes < (long) BYTES_PER_PARTICIPANT * teamSize) {
+            throw new IllegalArgumentException("Memory budget is too small for one team.");
+        }
+        this.teamSize = teamSize;
+        this.limits = limits;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Bytes of CSV to read at a time so the participants made from one
+     * window stay within half of the budget (the run buffers get the rest).
+     */
+    public long inputWindowBytes() {
+        long rows = memoryBudgetBytes / 2 / BYTES_PER_PARTICIPANT;
+        return Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, rows * MIN_ROW_BYTES));
+    }
+
+    /**
+     * Form teams from the source and hand each one to the sink.
+     * Returns the number of teams written.
+     */
+    public int buildTeams(Iterator<Participant> source, TeamSink sink) throws IOException {
+        Path workDir = Files.createTempDirectory(tempDir, "teams");
+        try {
+            Runs runs = spill(source, workDir);
+
+            long leaders = runs.counts[LEADERS];
+            long thinkers = runs.counts[THINKERS];
+            long teamCount = Math.min(Math.min(leaders, thinkers), runs.total / teamSize);
+            if (teamCount <= 0) {
+                return 0;
+            }
+
+            // Leaders beyond teamCount never get a team, same as TeamBuilder
+            long used = teamCount + thinkers + runs.counts[OTHERS];
+            long perBatch = Math.max(teamSize, memoryBudgetBytes / BYTES_PER_PARTICIPANT);
+            int batches = (int) Math.min((used + perBatch - 1) / perBatch, teamCount);
+
+            Path[] batchFiles = distribute(runs, teamCount, batches, workDir);
+
+            int written = 0;
+            for (int b = 0; b < batches; b++) {
+                List<Participant> batch = readAll(batchFiles[b], bufferSize(memoryBudgetBytes / 4));
+                Files.delete(batchFiles[b]);
+
+                long batchTeams = (teamCount - b + batches - 1) / batches;
+                Formation formation = new TeamBuilder(teamSize, limits, FormationStrategy.greedy())
+                        .form(ParticipantStore.of(batch), (int) batchTeams);
+
+                for (Team team : formation.toTeams(batch::get, written + 1)) {
+                    sink.accept(team);
+                }
+                written += formation.getTeamCount();
+            }
+            return written;
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    private Runs spill(Iterator<Participant> source, Path workDir) throws IOException {
+        Runs runs = new Runs(workDir, bufferSize(memoryBudgetBytes / (2 * 3 * SKILL_LEVELS)));
+        try {
+            while (source.hasNext()) {
+                Participant p = source.next();
+                runs.total++;
+
+                int type = p.getTypeCode();
+                if (type < 0 || type == CodeDictionary.TYPE_UNKNOWN) {
+                    continue;
+                }
+                int category = (type == CodeDictionary.TYPE_LEADER) ? LEADERS
+                        : (type == CodeDictionary.TYPE_THINKER) ? THINKERS : OTHERS;
+
+                int skill = p.getSkillRating();
+                if (skill < 0 || skill >= SKILL_LEVELS) {
+                    throw new IllegalArgumentException("Skill out of range for " + p.getId() + ": " + skill);
+                }
+
+                write(runs.out(category, skill), p);
+                runs.counts[category]++;
+            }
+        } finally {
+            runs.close();
+        }
+        return runs;
+    }
+
+    /**
+     * Read every category from the highest skill down and deal the k-th
+     * participant of the category into batch k % batches, writing up to
+     * MAX_OPEN_BATCHES batch files per pass over the runs.
+     */
+    private Path[] distribute(Runs runs, long teamCount, int batches, Path workDir)
+            throws IOException {
+        int buffer = bufferSize(memoryBudgetBytes / (MAX_OPEN_BATCHES + 1));
+        int group = (int) Math.max(1, Math.min(MAX_OPEN_BATCHES, memoryBudgetBytes / buffer - 1));
+
+        Path[] files = new Path[batches];
+        for (int first = 0; first < batches; first += group) {
+            int last = Math.min(batches, first + group);
+            boolean lastPass = last == batches;
+
+            DataOutputStream[] outs = new DataOutputStream[last - first];
+            try {
+                for (int b = first; b < last; b++) {
+                    files[b] = workDir.resolve("batch-" + b);
+                    outs[b - first] = new DataOutputStream(new BufferedOutputStream(
+                            Files.newOutputStream(files[b]), buffer));
+                }
+
+                for (int category = LEADERS; category <= OTHERS; category++) {
+                    long limit = (category == LEADERS) ? teamCount : Long.MAX_VALUE;
+                    long rank = 0;
+
+                    for (int skill = SKILL_LEVELS - 1; skill >= 0 && rank < limit; skill--) {
+                        Path run = runs.file(category, skill);
+                        if (!Files.exists(run)) continue;
+
+                        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                                Files.newInputStream(run), buffer))) {
+                            Participant p;
+                            while (rank < limit && (p = read(in, null)) != null) {
+                                int b = (int) (rank % batches);
+                                if (b >= first && b < last) {
+                                    write(outs[b - first], p);
+                                }
+                                rank++;
+                            }
+                        }
+                        if (lastPass) Files.delete(run);
+                    }
+                }
+            } finally {
+                for (DataOutputStream out : outs) {
+                    if (out != null) out.close();
+                }
+            }
+        }
+        return files;
+    }
+
+    private static List<Participant> readAll(Path file, int buffer) throws IOException {
+        List<Participant> list = new ArrayList<>();
+        Map<String, String> shared = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), buffer))) {
+            Participant p;
+            while ((p = read(in, shared)) != null) {
+                list.add(p);
+            }
+        }
+        return list;
+    }
+
+    // A file buffer of about the given size, within MIN_BUFFER and MAX_BUFFER
+    private static int bufferSize(long bytes) {
+        return (int) Math.max(MIN_BUFFER, Math.min(MAX_BUFFER, bytes));
+    }
+
+    private static void write(DataOutputStream out, Participant p) throws IOException {
+        writeText(out, p.getId());
+        writeText(out, p.getName());
+        writeText(out, p.getPreferredGame());
+        writeText(out, p.getPreferredRole());
+        writeText(out, p.getPersonalityType());
+        out.writeByte(p.getSkillRating());
+        out.writeByte(p.getPersonalityScoreScaled());
+    }
+
+    // Returns null at end of file. Game/role/type strings are shared when a map is given.
+    private static Participant read(DataInputStream in, Map<String, String> shared)
+            throws IOException {
+        String id;
+        try {
+            id = readText(in);
+        } catch (EOFException e) {
+            return null;
+        }
+        Participant p = new Participant(id, readText(in));
+        p.setPreferredGame(share(shared, readText(in)));
+        p.setPreferredRole(share(shared, readText(in)));
+        p.setPersonalityType(share(shared, readText(in)));
+        p.setSkillRating(in.readByte());
+        p.setPersonalityScoreScaled(in.readByte());
+        return p;
+    }
+
+    private static String share(Map<String, String> shared, String s) {
+        if (shared == null || s == null) return s;
+        String existing = shared.putIfAbsent(s, s);
+        return existing == null ? s : existing;
+    }
+
+    private static void writeText(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Spill files, one per (category, skill), opened on first use.
+     */
+    private static final class Runs {
+        final Path dir;
+        final int buffer;
+        final DataOutputStream[] outs = new DataOutputStream[3 * SKILL_LEVELS];
+        final long[] counts = new long[3];
+        long total;
+
+        Runs(Path dir, int buffer) {
+            this.dir = dir;
+            this.buffer = buffer;
+        }
+
+        Path file(int category, int skill) {
+            return dir.resolve("run-" + category + "-" + skill);
+        }
+
+        DataOutputStream out(int category, int skill) throws IOException {
+            int i = category * SKILL_LEVELS + skill;
+            if (outs[i] == null) {
+                outs[i] = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(file(category, skill)), buffer));
+            }
+            return outs[i];
+        }
+
+        void close() throws IOException {
+            for (DataOutputStream out : outs) {
+                if (out != null) out.close();
+            }
+        }
+    }
+}
@@ -1,14 +1,24 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class Team {
 
     private String teamName;
     private final List<Participant> members = new ArrayList<>();
 
+    // Running composition counters by CodeDictionary code, holding only the
+    // codes of current members. Updated in addMember so the queries below
+    // never rescan members.
+    private final Counts gameCounts = new Counts();
+    private final Counts roleCounts = new Counts();
+    private final Counts typeCounts = new Counts();
+    private long roleMask;          // bit per role code (codes < 64)
+    private int distinctRoles;      // distinct non-empty roles
+    private int totalSkill;
+    private boolean frozen;         // read-only copy, see frozenCopy()
+
     public Team(String teamName) {
         this.teamName = teamName;
     }
@@ -26,90 +36,186 @@ public class Team {
     }
 
     public void addMember(Participant participant) {
+        checkNotFrozen();
         if (participant != null) {
             members.add(participant);
-        }
-    }
 
+            int game = participant.getGameCode();
+            if (game >= 0) {
+                gameCounts.increment(game);
+            }
 
+            int role = participant.getRoleCode();
+            if (role >= 0 && roleCounts.increment(role) == 1) {
+                if (role < 64) roleMask |= 1L << role;
+                if (!participant.getPreferredRole().isEmpty()) distinctRoles++;
+            }
 
-    public boolean hasLeader() {
-        for (Participant p : members) {
-            if ("LEADER".equalsIgnoreCase(p.getPersonalityType())) {
-                return true;
+            int type = participant.getTypeCode();
+            if (type >= 0) {
+                typeCounts.increment(type);
             }
+
+            totalSkill += participant.getSkillRating();
         }
-        return false;
     }
 
-    public int countByPersonalityType(String type) {
-        if (type == null) return 0;
-        int count = 0;
-        for (Participant p : members) {
-            if (p.getPersonalityType() != null &&
-                    p.getPersonalityType().equalsIgnoreCase(type)) {
-                count++;
+    /**
+     * Remove a member (matched by identity) and undo its counters.
+     * Returns false if the participant is not in this team.
+     */
+    public boolean removeMember(Participant participant) {
+        checkNotFrozen();
+        int index = -1;
+        for (int i = 0; i < members.size(); i++) {
+            if (members.get(i) == participant) {
+                index = i;
+                break;
             }
         }
-        return count;
+        if (index < 0) return false;
+        members.remove(index);
+
+        int game = participant.getGameCode();
+        if (game >= 0) {
+            gameCounts.decrement(game);
+        }
+
+        int role = participant.getRoleCode();
+        if (role >= 0 && roleCounts.decrement(role) == 0) {
+            if (role < 64) roleMask &= ~(1L << role);
+            if (!participant.getPreferredRole().isEmpty()) distinctRoles--;
+        }
+
+        int type = participant.getTypeCode();
+        if (type >= 0) {
+            typeCounts.decrement(type);
+        }
+
+        totalSkill -= participant.getSkillRating();
+        return true;
     }
 
+    /**
+     * A copy with the same name and members that rejects further changes
+     * (used for the teams in RosterStore snapshots).
+     */
+    Team frozenCopy() {
+        Team copy = new Team(teamName);
+        for (Participant member : members) {
+            copy.addMember(member);
+        }
+        copy.frozen = true;
+        return copy;
+    }
 
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException(teamName + " is a read-only snapshot and cannot be changed");
+        }
+    }
 
-    public int countByGame(String game) {
-        if (game == null) return 0;
-        int count = 0;
-        for (Participant p : members) {
-            if (p.getPreferredGame() != null &&
-                    p.getPreferredGame().equalsIgnoreCase(game)) {
-                count++;
+    /**
+     * Count per code for the codes that are present. A team has only a
+     * handful of distinct codes, so a scan is as quick as an index and the
+     * size never depends on how many codes the dictionary holds.
+     */
+    private static final class Counts {
+        private int[] codes = new int[4];
+        private int[] counts = new int[4];
+        private int size;
+
+        int get(int code) {
+            for (int i = 0; i < size; i++) {
+                if (codes[i] == code) return counts[i];
             }
+            return 0;
         }
-        return count;
-    }
 
+        // Returns the new count
+        int increment(int code) {
+            for (int i = 0; i < size; i++) {
+                if (codes[i] == code) return ++counts[i];
+            }
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            codes[size] = code;
+            counts[size++] = 1;
+            return 1;
+        }
 
-    public boolean hasRole(String role) {
-        if (role == null) return false;
-        for (Participant p : members) {
-            if (p.getPreferredRole() != null &&
-                    p.getPreferredRole().equalsIgnoreCase(role)) {
-                return true;
+        // Returns the new count; a code that drops to zero is forgotten
+        int decrement(int code) {
+            for (int i = 0; i < size; i++) {
+                if (codes[i] != code) continue;
+                int count = --counts[i];
+                if (count == 0) {
+                    size--;
+                    codes[i] = codes[size];
+                    counts[i] = counts[size];
+                }
+                return count;
             }
+            return 0;
         }
-        return false;
+    }
+
+    private static int countOf(Counts counts, int code) {
+        return (code >= 0) ? counts.get(code) : 0;
+    }
+
+
+
+    public boolean hasLeader() {
+        return countOf(typeCounts, CodeDictionary.TYPE_LEADER) > 0;
+    }
+
+    public int countByPersonalityType(String type) {
+        return countOf(typeCounts, CodeDictionary.TYPES.find(type));
+    }
+
+
+
+    public int countByGame(String game) {
+        return countByGameCode(CodeDictionary.GAMES.find(game));
+    }
+
+    public int countByGameCode(int gameCode) {
+        return countOf(gameCounts, gameCode);
+    }
+
+
+    public boolean hasRole(String role) {
+        return hasRoleCode(CodeDictionary.ROLES.find(role));
+    }
+
+    public boolean hasRoleCode(int roleCode) {
+        if (roleCode < 0) return false;
+        if (roleCode < 64) return (roleMask & (1L << roleCode)) != 0;
+        return countOf(roleCounts, roleCode) > 0;
+    }
+
+    /**
+     * Bit per role code present in the team (only covers codes below 64).
+     */
+    public long getRoleMask() {
+        return roleMask;
     }
 
     public int countDistinctRoles() {
-        Set<String> roles = new HashSet<>();
-        for (Participant p : members) {
-            if (p.getPreferredRole() != null && !p.getPreferredRole().isEmpty()) {
-                roles.add(p.getPreferredRole().toUpperCase());
-            }
-        }
-        return roles.size();
+        return distinctRoles;
     }
 
     public int countRole(String role) {
-        if (role == null) return 0;
-        int count = 0;
-        for (Participant p : members) {
-            if (p.getPreferredRole() != null &&
-                    p.getPreferredRole().equalsIgnoreCase(role)) {
-                count++;
-            }
-        }
-        return count;
+        return countOf(roleCounts, CodeDictionary.ROLES.find(role));
     }
 
 
 
     public int getTotalSkill() {
-        int sum = 0;
-        for (Participant p : members) {
-            sum += p.getSkillRating();
-        }
-        return sum;
+        return totalSkill;
     }
 
     @Override
@@ -118,14 +224,7 @@ public class Team {
     }
 
     public int countThinkers() {
-        int count = 0;
-        for (Participant p : members) {
-            if (p.getPersonalityType() != null &&
-                    p.getPersonalityType().equalsIgnoreCase("THINKER")) {
-                count++;
-            }
-        }
-        return count;
+        return countOf(typeCounts, CodeDictionary.TYPE_THINKER);
     }
 
 }
@@ -1,201 +1,414 @@
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class TeamBuilder {
 
+    // Rosters at least this large are worth forming with buildTeamsParallel
+    public static final int PARALLEL_MIN_PARTICIPANTS = 100_000;
+
+    private static final int MIN_TEAMS_PER_SHARD = 256;
+
+    // Time per formation phase (summed over shards in parallel mode)
+    private static final Metrics.Timer TOTAL = Metrics.timer("form.total");
+    private static final Metrics.Timer PARTITION = Metrics.timer("form.partition");
+    private static final Metrics.Timer SORT = Metrics.timer("form.sort");
+    private static final Metrics.Timer SEED_LEADERS = Metrics.timer("form.seedLeaders");
+    private static final Metrics.Timer SEED_THINKERS = Metrics.timer("form.seedThinkers");
+    private static final Metrics.Timer ASSIGN_REMAINING = Metrics.timer("form.assignRemaining");
+    private static final Metrics.Timer REPAIR = Metrics.timer("form.repair");
+    private static final Metrics.Counter TEAMS_FORMED = Metrics.counter("form.teams");
+    private static final Metrics.Counter UNASSIGNED = Metrics.counter("form.unassigned");
+
     private final int teamSize;
-    private final int maxSameGamePerTeam = 2;
-    private final int maxThinkersPerTeam = 2;
-    private final int desiredDistinctRoles = 3;
+    private final FormationLimits limits;
+    private final FormationStrategy strategy;
 
     public TeamBuilder(int teamSize) {
+        this(teamSize, FormationLimits.DEFAULT, FormationStrategy.greedy());
+    }
+
+    public TeamBuilder(int teamSize, FormationStrategy strategy) {
+        this(teamSize, FormationLimits.DEFAULT, strategy);
+    }
+
+    public TeamBuilder(int teamSize, FormationLimits limits, FormationStrategy strategy) {
         if (teamSize < 2) {
             throw new IllegalArgumentException("Team size must be at least 2.");
         }
+        if (limits == null || strategy == null) {
+            throw new IllegalArgumentException("Limits and strategy are required.");
+        }
         this.teamSize = teamSize;
+        this.limits = limits;
+        this.strategy = strategy;
     }
 
-    public List<Team> buildTeams(List<Participant> participants) {
-
-        List<Team> teams = new ArrayList<>();
-        if (participants == null || participants.isEmpty()) {
-            return teams;
-        }
-
-
-        List<Participant> copy = new ArrayList<>(participants);
-
-        List<Participant> leaders = new ArrayList<>();
-        List<Participant> thinkers = new ArrayList<>();
-        List<Participant> others  = new ArrayList<>();
-
-        participants.parallelStream().forEach(p -> {
-            String type = p.getPersonalityType();
-            if (type == null || type.equalsIgnoreCase("UNKNOWN")) {
-                return;
-            }
+    public int getTeamSize() {
+        return teamSize;
+    }
 
+    public FormationLimits getLimits() {
+        return limits;
+    }
 
-            synchronized (leaders) {
-                if ("LEADER".equalsIgnoreCase(type)) {
-                    leaders.add(p);
-                    return;
-                }
-            }
+    public FormationStrategy getStrategy() {
+        return strategy;
+    }
 
-            synchronized (thinkers) {
-                if ("THINKER".equalsIgnoreCase(type)) {
-                    thinkers.add(p);
-                    return;
-                }
-            }
+    public List<Team> buildTeams(List<Participant> participants) {
+        if (participants == null || participants.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return form(ParticipantStore.of(participants)).toTeams(participants::get);
+    }
 
-            synchronized (others) {
-                others.add(p);
-            }
-        });
+    public List<Team> buildTeams(ParticipantStore store) {
+        return form(store).toTeams(store::toParticipant);
+    }
 
+    public List<Team> buildTeamsParallel(List<Participant> participants, ForkJoinPool pool) {
+        if (participants == null || participants.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return formParallel(ParticipantStore.of(participants), pool).toTeams(participants::get);
+    }
 
+    public List<Team> buildTeamsParallel(List<Participant> participants) {
+        return buildTeamsParallel(participants, ForkJoinPool.commonPool());
+    }
 
-        if (leaders.isEmpty() || thinkers.isEmpty()) {
-            return teams;
+    /**
+     * Greedy formation followed by up to budgetMillis of TeamOptimizer
+     * swaps to even out total skill between teams.
+     */
+    public List<Team> buildTeamsOptimized(List<Participant> participants, long budgetMillis) {
+        if (participants == null || participants.isEmpty()) {
+            return new ArrayList<>();
         }
+        ParticipantStore store = ParticipantStore.of(participants);
+        Formation formation = (participants.size() >= PARALLEL_MIN_PARTICIPANTS)
+                ? formParallel(store, ForkJoinPool.commonPool())
+                : form(store);
+
+        return new TeamOptimizer(limits)
+                .optimize(store, formation, budgetMillis)
+                .toTeams(participants::get);
+    }
 
+    /**
+     * Track already formed teams so participants can join or withdraw
+     * without forming everything again.
+     */
+    public TeamMaintainer maintain(List<Participant> participants, List<Team> teams) {
+        return new TeamMaintainer(this, participants, teams);
+    }
 
-        Comparator<Participant> bySkillDesc =
-                (a, b) -> Integer.compare(b.getSkillRating(), a.getSkillRating());
-
-        leaders.sort(bySkillDesc);
-        thinkers.sort(bySkillDesc);
-        others.sort(bySkillDesc);
+    /**
+     * Greedy formation straight off the store:
+     * one leader per team, then one thinker into each team (chosen by the
+     * FormationStrategy), then everyone else by descending skill into the
+     * best team that still passes the game and thinker limits.
+     */
+    public Formation form(ParticipantStore store) {
+        return form(store, store.size() / teamSize);
+    }
 
-        int totalParticipants = copy.size();
-        int maxTeamsBySize = (int) Math.floor(totalParticipants / (double) teamSize);
+    /**
+     * Same as form, but with at most maxTeams teams instead of the limit
+     * given by the roster size (used when the store is one batch of a
+     * larger event).
+     */
+    public Formation form(ParticipantStore store, int maxTeams) {
+        long start = System.nanoTime();
 
+        int[][] split = split(store);
+        int[] leaders = split[0];
+        int[] thinkers = split[1];
+        int[] others = split[2];
 
-        int teamCount = Math.min(leaders.size(), thinkers.size());
-        teamCount = Math.min(teamCount, maxTeamsBySize);
+        int teamCount = Math.min(Math.min(leaders.length, thinkers.length), maxTeams);
+        Formation formation = new Formation(store.size(), Math.max(teamCount, 0));
 
         if (teamCount <= 0) {
-            return teams;
+            recordFormed(store, formation, start);
+            return formation;
         }
 
+        FormationState state = newState(store, teamCount);
+        formTeams(state, leaders, thinkers, others, formation::place);
 
-        for (int i = 1; i <= teamCount; i++) {
-            teams.add(new Team("Team " + i));
-        }
-
+        recordFormed(store, formation, start);
+        return formation;
+    }
 
-        for (int i = 0; i < teamCount; i++) {
-            teams.get(i).addMember(leaders.get(i));
+    /**
+     * Parallel mode for very large rosters.
+     *
+     * Participants are split into shards that each get every k-th leader,
+     * thinker and other from the skill-sorted lists, so every shard has the
+     * same skill profile as the whole event. Each shard forms its own teams
+     * on the pool, then a repair pass places whatever a shard could not fit
+     * into the open teams of all shards. Placement always goes through the
+     * same checks as form, so the team rules still hold.
+     */
+    public Formation formParallel(ParticipantStore store, ForkJoinPool pool) {
+        long start = System.nanoTime();
+
+        int[][] split = split(store);
+        int[] leaders = split[0];
+        int[] thinkers = split[1];
+        int[] others = split[2];
+
+        int teamCount = teamCount(store.size(), leaders.length, thinkers.length);
+        int shardCount = Math.min(pool.getParallelism(), teamCount / MIN_TEAMS_PER_SHARD);
+
+        if (shardCount <= 1) {
+            return form(store);
         }
 
-        int thinkerIndex = 0;
-        for (; thinkerIndex < thinkers.size() && thinkerIndex < teamCount; thinkerIndex++) {
-            Participant thinker = thinkers.get(thinkerIndex);
-            Team bestTeam = findBestTeamForFirstThinker(thinker, teams);
-            if (bestTeam != null) {
-                bestTeam.addMember(thinker);
-            }
+        Formation formation = new Formation(store.size(), teamCount);
+
+        // Team i is seeded by leaders[i] and lives in shard i % shardCount
+        List<Callable<Shard>> tasks = new ArrayList<>();
+        for (int s = 0; s < shardCount; s++) {
+            int shard = s;
+            int[] shardLeaders = stride(leaders, shard, shardCount, teamCount);
+            int[] shardThinkers = stride(thinkers, shard, shardCount, thinkers.length);
+            int[] shardOthers = stride(others, shard, shardCount, others.length);
+
+            tasks.add(() -> {
+                // Rows are disjoint between shards, so each one can write its
+                // team numbers straight into the shared formation
+                FormationState state = newState(store, shardLeaders.length);
+                Shard result = new Shard();
+                result.leftovers = formTeams(state, shardLeaders, shardThinkers, shardOthers,
+                        (row, team) -> {
+                            formation.assign(row, team * shardCount + shard);
+                            result.addPlaced(row);
+                        });
+                return result;
+            });
         }
 
-
-        List<Participant> remaining = new ArrayList<>();
-
-
-        for (int i = thinkerIndex; i < thinkers.size(); i++) {
-            remaining.add(thinkers.get(i));
+        List<int[]> leftovers = new ArrayList<>();
+        try {
+            for (Future<Shard> f : pool.invokeAll(tasks)) {
+                Shard shard = f.get();
+                for (int i = 0; i < shard.placedCount; i++) {
+                    formation.appendPlaced(shard.placed[i]);
+                }
+                leftovers.add(shard.leftovers);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Team formation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Team formation failed", e.getCause());
         }
 
+        long repairStart = System.nanoTime();
+        repair(store, formation, concat(leftovers));
+        REPAIR.recordSince(repairStart);
 
-        remaining.addAll(others);
-
-
-        remaining.sort(bySkillDesc);
-
-        assignRemaining(remaining, teams);
-
-        return teams;
+        recordFormed(store, formation, start);
+        return formation;
     }
 
+    private static void recordFormed(ParticipantStore store, Formation formation, long start) {
+        TOTAL.recordSince(start);
+        TEAMS_FORMED.add(formation.getTeamCount());
+        UNASSIGNED.add(store.size() - formation.getPlacedCount());
+    }
 
-    private Team findBestTeamForFirstThinker(Participant thinker, List<Team> teams) {
-        Team best = null;
-        int bestScore = Integer.MAX_VALUE;
+    FormationState newState(ParticipantStore store, int teamCount) {
+        return new FormationState(store, teamCount, teamSize, limits);
+    }
 
-        for (Team t : teams) {
+    /**
+     * Leaders, thinkers and everyone else (UNKNOWN types are left out),
+     * each sorted by descending skill, ties in row order.
+     */
+    private int[][] split(ParticipantStore store) {
+        long start = System.nanoTime();
+        int n = store.size();
+        int[] leaders = new int[n];
+        int[] thinkers = new int[n];
+        int[] others = new int[n];
+        int l = 0, t = 0, o = 0;
+
+        for (int row = 0; row < n; row++) {
+            int type = store.typeCode(row);
+            if (type < 0 || type == CodeDictionary.TYPE_UNKNOWN) {
+                continue;
+            }
 
-            if (t.getSize() >= teamSize) continue;
+            if (type == CodeDictionary.TYPE_LEADER) {
+                leaders[l++] = row;
+            } else if (type == CodeDictionary.TYPE_THINKER) {
+                thinkers[t++] = row;
+            } else {
+                others[o++] = row;
+            }
+        }
 
-            if (t.countThinkers() > 0) continue;
+        PARTITION.recordSince(start);
 
-            int score = t.getTotalSkill();
+        start = System.nanoTime();
+        int[][] split = {
+                sortBySkillDesc(store, leaders, l),
+                sortBySkillDesc(store, thinkers, t),
+                sortBySkillDesc(store, others, o)
+        };
+        SORT.recordSince(start);
+        return split;
+    }
 
-            if (score < bestScore) {
-                bestScore = score;
-                best = t;
-            }
+    // Stable counting sort; skills are stored as bytes
+    private static int[] sortBySkillDesc(ParticipantStore store, int[] rows, int length) {
+        int[] start = new int[Byte.MAX_VALUE + 2];
+        for (int i = 0; i < length; i++) {
+            start[Byte.MAX_VALUE - store.skill(rows[i]) + 1]++;
+        }
+        for (int i = 1; i < start.length; i++) {
+            start[i] += start[i - 1];
         }
 
-        return best;
+        int[] sorted = new int[length];
+        for (int i = 0; i < length; i++) {
+            sorted[start[Byte.MAX_VALUE - store.skill(rows[i])]++] = rows[i];
+        }
+        return sorted;
     }
 
+    private int teamCount(int totalParticipants, int leaderCount, int thinkerCount) {
+        int maxTeamsBySize = (int) Math.floor(totalParticipants / (double) teamSize);
 
-    private void assignRemaining(List<Participant> remaining, List<Team> teams) {
-        for (Participant p : remaining) {
-            Team best = chooseBestTeam(p, teams);
-            if (best != null) {
-                best.addMember(p);
-            }
+        int teamCount = Math.min(leaderCount, thinkerCount);
+        return Math.min(teamCount, maxTeamsBySize);
+    }
 
+    private static int[] stride(int[] rows, int start, int step, int end) {
+        int[] result = new int[Math.max(0, (end - start + step - 1) / step)];
+        for (int i = start, j = 0; i < end; i += step, j++) {
+            result[j] = rows[i];
         }
+        return result;
     }
 
-    private Team chooseBestTeam(Participant p, List<Team> teams) {
-
-        Team best = null;
-        int bestScore = Integer.MAX_VALUE;
+    private static int[] concat(List<int[]> parts) {
+        int length = 0;
+        for (int[] part : parts) {
+            length += part.length;
+        }
+        int[] all = new int[length];
+        int pos = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, all, pos, part.length);
+            pos += part.length;
+        }
+        return all;
+    }
 
-        String game = p.getPreferredGame();
-        String role = p.getPreferredRole();
-        String type = p.getPersonalityType();
+    /**
+     * Greedy formation into the state's teams (team i gets leaders[i], the
+     * strategy seeds the thinkers).
+     * Every placement is also reported to the sink. Returns the rows that
+     * did not fit anywhere.
+     */
+    private int[] formTeams(FormationState state, int[] leaders, int[] thinkers, int[] others,
+                            FormationStrategy.PlacementSink sink) {
 
-        for (Team t : teams) {
+        int teamCount = state.getTeamCount();
 
+        long start = System.nanoTime();
+        for (int i = 0; i < teamCount; i++) {
+            state.place(i, leaders[i]);
+            sink.placed(leaders[i], i);
+        }
+        SEED_LEADERS.recordSince(start);
 
-            if (t.getSize() >= teamSize) continue;
+        start = System.nanoTime();
+        int[] restThinkers = strategy.seed(state, leaders, thinkers, sink);
+        SEED_THINKERS.recordSince(start);
 
+        start = System.nanoTime();
+        int[] remaining = new int[restThinkers.length + others.length];
+        System.arraycopy(restThinkers, 0, remaining, 0, restThinkers.length);
+        System.arraycopy(others, 0, remaining, restThinkers.length, others.length);
 
-            if (game != null && t.countByGame(game) >= maxSameGamePerTeam) continue;
+        remaining = sortBySkillDesc(state.getStore(), remaining, remaining.length);
+        SORT.recordSince(start);
 
+        start = System.nanoTime();
+        int[] unassigned = assignRemaining(state, remaining, sink);
+        ASSIGN_REMAINING.recordSince(start);
+        return unassigned;
+    }
 
-            if ("THINKER".equalsIgnoreCase(type) && t.countThinkers() >= maxThinkersPerTeam) {
-                continue;
+    private int[] assignRemaining(FormationState state, int[] remaining, FormationStrategy.PlacementSink sink) {
+        int[] unassigned = new int[remaining.length];
+        int count = 0;
+
+        for (int row : remaining) {
+            int best = state.bestFor(row);
+            if (best >= 0) {
+                state.place(best, row);
+                sink.placed(row, best);
+            } else {
+                unassigned[count++] = row;
             }
+        }
+        return Arrays.copyOf(unassigned, count);
+    }
 
+    /**
+     * Place shard leftovers across all teams: thinkers first go to teams
+     * that ended up without one, then everyone goes through the normal
+     * best-team choice.
+     */
+    private void repair(ParticipantStore store, Formation formation, int[] leftovers) {
+        if (leftovers.length == 0) return;
+
+        FormationState state = newState(store, formation.getTeamCount());
+        for (int i = 0; i < formation.getPlacedCount(); i++) {
+            int row = formation.getPlacedRow(i);
+            state.place(formation.getTeamOf(row), row);
+        }
 
-            int score = t.getTotalSkill();
-
-
-            if (role != null &&
-                    t.countDistinctRoles() < desiredDistinctRoles &&
-                    !t.hasRole(role)) {
-                score -= 10;
+        leftovers = sortBySkillDesc(store, leftovers, leftovers.length);
+
+        int[] remaining = new int[leftovers.length];
+        int count = 0;
+        for (int row : leftovers) {
+            if (store.typeCode(row) == CodeDictionary.TYPE_THINKER) {
+                int bestTeam = state.bestForFirstThinker(row);
+                if (bestTeam >= 0) {
+                    state.place(bestTeam, row);
+                    formation.place(row, bestTeam);
+                    continue;
+                }
             }
+            remaining[count++] = row;
+        }
 
+        assignRemaining(state, Arrays.copyOf(remaining, count), formation::place);
+    }
 
-            if ("BALANCED".equalsIgnoreCase(type)) {
-                score -= 3;
-            }
+    private static final class Shard {
+        int[] placed = new int[64];
+        int placedCount;
+        int[] leftovers;
 
-            if (score < bestScore) {
-                bestScore = score;
-                best = t;
+        void addPlaced(int row) {
+            if (placedCount == placed.length) {
+                placed = Arrays.copyOf(placed, placed.length * 2);
             }
+            placed[placedCount++] = row;
         }
-
-        return best;
     }
 }
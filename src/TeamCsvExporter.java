@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes teams in the CsvManager.saveTeams layout
+ * (TeamName,ID,Name,Game,Role,Skill,Personality), as UTF-8.
+ *
+ * Teams are cut into blocks of about ROWS_PER_BLOCK rows that are formatted
+ * straight to bytes on the pool. Finished blocks are written in order, a
+ * run of them at a time with one gathering write, and their buffers are
+ * reused for later blocks. With gzip the same bytes go through a
+ * GZIPOutputStream instead (compression itself runs on the calling thread).
+ */
+class TeamCsvExporter {
+
+    static final String HEADER = "TeamName,ID,Name,Game,Role,Skill,Personality";
+
+    private static final int ROWS_PER_BLOCK = 1 << 14;
+    private static final int MAX_GATHER = 16;
+    private static final int GZIP_BUFFER = 1 << 16;
+
+    private final ForkJoinPool pool;
+    private final byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private final Queue<RowBytes> free = new ConcurrentLinkedQueue<>();
+
+    TeamCsvExporter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    void write(Path target, List<Team> teams, boolean gzip) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream zip = gzip
+                     ? new GZIPOutputStream(Channels.newOutputStream(channel), GZIP_BUFFER) : null) {
+
+            output(channel, zip, List.of(new RowBytes(64).put(HEADER).put(lineSeparator)));
+
+            int[] bounds = blockBounds(teams);
+            int blocks = bounds.length - 1;
+
+            if (blocks == 1 || pool.getParallelism() < 2) {
+                RowBytes out = new RowBytes(ROWS_PER_BLOCK * 64);
+                for (int b = 0; b < blocks; b++) {
+                    format(teams, bounds[b], bounds[b + 1], out.clear());
+                    output(channel, zip, List.of(out));
+                }
+                return;
+            }
+
+            // Keep a bounded window of blocks being formatted; write them in order
+            int inFlight = Math.max(MAX_GATHER, pool.getParallelism() * 2);
+            Deque<Future<RowBytes>> pending = new ArrayDeque<>();
+            List<RowBytes> run = new ArrayList<>(MAX_GATHER);
+            int next = 0;
+            while (next < blocks || !pending.isEmpty()) {
+                while (next < blocks && pending.size() < inFlight) {
+                    int from = bounds[next];
+                    int to = bounds[++next];
+                    pending.add(pool.submit(() -> format(teams, from, to, take())));
+                }
+
+                run.add(pending.poll().get());
+                while (run.size() < MAX_GATHER && !pending.isEmpty() && pending.peek().isDone()) {
+                    run.add(pending.poll().get());
+                }
+                output(channel, zip, run);
+                free.addAll(run);
+                run.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Saving teams interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Saving teams failed", e.getCause());
+        }
+    }
+
+    // Team index where each block starts, plus teams.size() at the end
+    private static int[] blockBounds(List<Team> teams) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int rows = 0;
+        for (int t = 0; t < teams.size(); t++) {
+            rows += teams.get(t).getSize();
+            if (rows >= ROWS_PER_BLOCK && t + 1 < teams.size()) {
+                bounds.add(t + 1);
+                rows = 0;
+            }
+        }
+        bounds.add(teams.size());
+
+        int[] result = new int[bounds.size()];
+        for (int i = 0; i < result.length; i++) result[i] = bounds.get(i);
+        return result;
+    }
+
+    private RowBytes take() {
+        RowBytes out = free.poll();
+        return (out != null) ? out.clear() : new RowBytes(ROWS_PER_BLOCK * 64);
+    }
+
+    private RowBytes format(List<Team> teams, int from, int to, RowBytes out) {
+        for (int t = from; t < to; t++) {
+            Team team = teams.get(t);
+            String teamName = team.getTeamName();
+            for (Participant p : team.getMembers()) {
+                out.put(teamName).put(',')
+                        .put(p.getId()).put(',')
+                        .put(p.getName()).put(',')
+                        .put(p.getPreferredGame()).put(',')
+                        .put(p.getPreferredRole()).put(',')
+                        .put(p.getSkillRating()).put(',')
+                        .put(p.getPersonalityType())
+                        .put(lineSeparator);
+            }
+        }
+        return out;
+    }
+
+    private static void output(FileChannel channel, OutputStream zip, List<RowBytes> run)
+            throws IOException {
+        if (zip != null) {
+            for (RowBytes block : run) {
+                zip.write(block.array(), 0, block.length());
+            }
+            return;
+        }
+
+        ByteBuffer[] buffers = new ByteBuffer[run.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = run.get(i).toBuffer();
+            remaining += buffers[i].remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+}
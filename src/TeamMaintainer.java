@@ -0,0 +1,363 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps formed teams up to date as participants join or withdraw, instead of
+ * forming every team again.
+ *
+ * Newcomers go through the same open-team lookup and limits as TeamBuilder
+ * (so each one costs an index lookup, not a pass over the event). Anyone who
+ * fits nowhere waits. When someone withdraws, only their team is repaired:
+ * a lost leader is replaced from the waiting list (or the team is dissolved
+ * and its members placed elsewhere), a lost last thinker is replaced from
+ * the waiting list or moved over from a team that has two, and the free
+ * slot is filled from the waiting list. Each repair looks at no more than
+ * MAX_REPAIR_CANDIDATES candidates.
+ */
+public class TeamMaintainer {
+
+    private static final int MAX_REPAIR_CANDIDATES = 64;
+
+    private static final int LEADERS = 0;
+    private static final int THINKERS = 1;
+    private static final int OTHERS = 2;
+
+    private final TeamBuilder builder;
+    private final ParticipantStore store;
+    private final List<Participant> byRow = new ArrayList<>();
+    private final Map<Participant, Integer> rowOf = new IdentityHashMap<>();
+    private int[] teamOf;
+
+    private final Team[] teamByNumber;              // null once dissolved
+    private int teamCount;
+    private final List<Set<Integer>> waiting = List.of(
+            new LinkedHashSet<>(), new LinkedHashSet<>(), new LinkedHashSet<>());
+    private final Set<Integer> touched = new HashSet<>();     // team numbers
+
+    private FormationState state;
+
+    TeamMaintainer(TeamBuilder builder, List<Participant> participants, List<Team> formed) {
+        this.builder = builder;
+        this.store = new ParticipantStore(participants.size() + 16);
+        this.teamOf = new int[participants.size() + 16];
+        this.teamByNumber = formed.toArray(new Team[0]);
+        this.teamCount = teamByNumber.length;
+
+        for (Participant p : participants) {
+            addRow(p);
+        }
+        for (Team team : teamByNumber) {
+            for (Participant member : team.getMembers()) {
+                addRow(member);
+            }
+        }
+
+        rebuildState();
+
+        for (int row = 0; row < store.size(); row++) {
+            if (teamOf[row] < 0 && isEligible(row)) {
+                waitingFor(row).add(row);
+            }
+        }
+    }
+
+    /**
+     * The current teams (dissolved teams are left out).
+     */
+    public List<Team> getTeams() {
+        List<Team> teams = new ArrayList<>(teamCount);
+        for (Team team : teamByNumber) {
+            if (team != null) teams.add(team);
+        }
+        return teams;
+    }
+
+    public int getTeamCount() {
+        return teamCount;
+    }
+
+    /**
+     * Number of team slots: team numbers run from 0 to this, and a
+     * dissolved team keeps its number.
+     */
+    int teamSlots() {
+        return teamByNumber.length;
+    }
+
+    /**
+     * The team with this number, or null once it is dissolved.
+     */
+    Team teamAt(int number) {
+        return teamByNumber[number];
+    }
+
+    public int getWaitingCount() {
+        return waiting.get(LEADERS).size() + waiting.get(THINKERS).size() + waiting.get(OTHERS).size();
+    }
+
+    /**
+     * Numbers (ascending) of the teams whose members changed since the last
+     * call, possibly including teams dissolved since, and starts a new set.
+     */
+    int[] drainTouched() {
+        int[] changed = new int[touched.size()];
+        int count = 0;
+        for (int team : touched) {
+            changed[count++] = team;
+        }
+        touched.clear();
+        Arrays.sort(changed);
+        return changed;
+    }
+
+    public Team teamOf(Participant p) {
+        int team = teamNumberOf(p);
+        return (team < 0) ? null : teamByNumber[team];
+    }
+
+    /**
+     * Number of the participant's team, or -1 when they have none.
+     */
+    int teamNumberOf(Participant p) {
+        Integer row = rowOf.get(p);
+        return (row == null) ? -1 : teamOf[row];
+    }
+
+    /**
+     * Place a newcomer into the best open team that takes them.
+     * Returns that team, or null when they are waiting for a place.
+     */
+    public Team add(Participant p) {
+        if (rowOf.containsKey(p)) {
+            return teamOf(p);
+        }
+
+        int row = addRow(p);
+        // A game or role name the state has no counters for yet
+        state.cover(row);
+        if (!isEligible(row)) {
+            return null;
+        }
+
+        int team = chooseTeam(row);
+        if (team < 0) {
+            waitingFor(row).add(row);
+            return null;
+        }
+        placeRow(team, row);
+        return teamByNumber[team];
+    }
+
+    /**
+     * Add several newcomers, highest skill first as in TeamBuilder.
+     * Returns how many were placed.
+     */
+    public int addAll(List<Participant> newcomers) {
+        List<Participant> sorted = new ArrayList<>(newcomers);
+        sorted.sort(Comparator.comparingInt(Participant::getSkillRating).reversed());
+
+        int placed = 0;
+        for (Participant p : sorted) {
+            if (add(p) != null) placed++;
+        }
+        return placed;
+    }
+
+    /**
+     * Remove a participant and repair their team.
+     * Returns false if the participant is not known here.
+     */
+    public boolean withdraw(Participant p) {
+        Integer boxed = rowOf.remove(p);
+        if (boxed == null) return false;
+
+        int row = boxed;
+        if (isEligible(row) && waitingFor(row).remove(row)) return true;
+
+        int team = teamOf[row];
+        if (team < 0) return true;
+
+        unplaceRow(team, row);
+
+        int type = store.typeCode(row);
+        if (type == CodeDictionary.TYPE_LEADER) {
+            if (!replaceLeader(team)) {
+                dissolve(team);
+                return true;
+            }
+        } else if (type == CodeDictionary.TYPE_THINKER && state.thinkers(team) == 0) {
+            replaceThinker(team);
+        }
+
+        fillFromWaiting(team);
+        return true;
+    }
+
+    private int addRow(Participant p) {
+        Integer existing = rowOf.get(p);
+        if (existing != null) return existing;
+
+        int row = store.add(p);
+        byRow.add(p);
+        rowOf.put(p, row);
+        if (row == teamOf.length) {
+            teamOf = Arrays.copyOf(teamOf, teamOf.length * 2);
+        }
+        teamOf[row] = -1;
+        return row;
+    }
+
+    // UNKNOWN types are never placed, same as TeamBuilder
+    private boolean isEligible(int row) {
+        int type = store.typeCode(row);
+        return type >= 0 && type != CodeDictionary.TYPE_UNKNOWN;
+    }
+
+    private Set<Integer> waitingFor(int row) {
+        int type = store.typeCode(row);
+        return waiting.get(type == CodeDictionary.TYPE_LEADER ? LEADERS
+                : type == CodeDictionary.TYPE_THINKER ? THINKERS : OTHERS);
+    }
+
+    private int chooseTeam(int row) {
+        int type = store.typeCode(row);
+        if (type == CodeDictionary.TYPE_LEADER) {
+            return -1;
+        }
+        if (type == CodeDictionary.TYPE_THINKER) {
+            int team = state.bestForFirstThinker(row);
+            if (team >= 0) {
+                return team;
+            }
+        }
+        return state.bestFor(row);
+    }
+
+    private void placeRow(int team, int row) {
+        state.place(team, row);
+        teamOf[row] = team;
+        teamByNumber[team].addMember(byRow.get(row));
+        touched.add(team);
+    }
+
+    private void unplaceRow(int team, int row) {
+        state.remove(team, row);
+        teamOf[row] = -1;
+        teamByNumber[team].removeMember(byRow.get(row));
+        touched.add(team);
+    }
+
+    private boolean replaceLeader(int team) {
+        int leader = bestWaiting(team, waiting.get(LEADERS), -1);
+        if (leader < 0) return false;
+
+        waiting.get(LEADERS).remove(leader);
+        placeRow(team, leader);
+        return true;
+    }
+
+    private void replaceThinker(int team) {
+        int thinker = bestWaiting(team, waiting.get(THINKERS), -1);
+        if (thinker >= 0) {
+            waiting.get(THINKERS).remove(thinker);
+            placeRow(team, thinker);
+            return;
+        }
+
+        // Move one over from a nearby team that has a spare
+        int checked = 0;
+        for (int u = (team + 1) % teamByNumber.length; u != team && checked < MAX_REPAIR_CANDIDATES;
+             u = (u + 1) % teamByNumber.length, checked++) {
+            if (teamByNumber[u] == null || state.thinkers(u) < 2) continue;
+
+            for (Participant member : teamByNumber[u].getMembers()) {
+                int row = rowOf.get(member);
+                if (store.typeCode(row) == CodeDictionary.TYPE_THINKER && state.canTake(team, row)) {
+                    unplaceRow(u, row);
+                    placeRow(team, row);
+                    fillFromWaiting(u);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void fillFromWaiting(int team) {
+        while (state.isOpen(team)) {
+            int row = bestWaiting(team, waiting.get(OTHERS),
+                    bestWaiting(team, waiting.get(THINKERS), -1));
+            if (row < 0) return;
+
+            waitingFor(row).remove(row);
+            placeRow(team, row);
+        }
+    }
+
+    /**
+     * Highest-skill row the team can take among the first
+     * MAX_REPAIR_CANDIDATES of a waiting list, or best if that is higher.
+     */
+    private int bestWaiting(int team, Set<Integer> candidates, int best) {
+        int checked = 0;
+        for (Iterator<Integer> it = candidates.iterator(); it.hasNext() && checked < MAX_REPAIR_CANDIDATES;
+             checked++) {
+            int row = it.next();
+            if (!state.canTake(team, row)) continue;
+            if (best < 0 || store.skill(row) > store.skill(best)) {
+                best = row;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The team lost its leader and no one can replace them: close it and
+     * place its members elsewhere.
+     */
+    private void dissolve(int team) {
+        Team dissolved = teamByNumber[team];
+        state.retire(team);
+
+        List<Integer> rows = new ArrayList<>();
+        for (Participant member : new ArrayList<>(dissolved.getMembers())) {
+            int row = rowOf.get(member);
+            unplaceRow(team, row);
+            rows.add(row);
+        }
+        teamByNumber[team] = null;
+        teamCount--;
+
+        for (int row : rows) {
+            int target = chooseTeam(row);
+            if (target >= 0) {
+                placeRow(target, row);
+            } else {
+                waitingFor(row).add(row);
+            }
+        }
+    }
+
+    // Fresh counters sized for the store's codes, replayed from the teams
+    private void rebuildState() {
+        state = builder.newState(store, teamByNumber.length);
+        for (int t = 0; t < teamByNumber.length; t++) {
+            if (teamByNumber[t] == null) {
+                state.retire(t);
+                continue;
+            }
+            for (Participant member : teamByNumber[t].getMembers()) {
+                int row = rowOf.get(member);
+                teamOf[row] = t;
+                state.place(t, row);
+            }
+        }
+    }
+}
@@ -1,7 +1,14 @@
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
 
 public class TeamMateApp {
     private static boolean csvLoaded = false;
@@ -18,11 +25,64 @@ public class TeamMateApp {
     private static final CsvManager csvManager = new CsvManager();
     private static final PersonalityClassifier classifier = new PersonalityClassifier();
 
-    private static List<Participant> participants = new ArrayList<>();
-    private static List<Team> teams = new ArrayList<>();
+    // Participants and teams; views, saves and formation read a snapshot of it
+    private static final RosterStore roster = new RosterStore();
+    private static final ParticipantRegistry registry = new ParticipantRegistry();
+
+    // Changes are journaled here and replayed on the next start
+    private static final String DATA_DIR = System.getProperty("teammate.data", "teammate-data");
+    private static StateJournal journal;
+
+    // Seconds between metrics log lines (0 = off); metrics are always available over JMX
+    private static final long METRICS_LOG_SECONDS = Long.getLong("teammate.metrics.log", 0);
+    // Seed of the formation search, so a run can be repeated
+    private static final long FORMATION_SEED = Long.getLong("teammate.seed", 0);
+    // Team rules: the defaults, or a profile from -Dteammate.rules=<file> (-Dteammate.rules.profile=<name>)
+    private static final FormationLimits RULES = loadRules();
+
+    // Teams formed before, by roster content and settings; kept on disk too when a directory is given
+    private static final String FORMATION_CACHE_DIR = System.getProperty("teammate.formationCache");
+    private static final FormationCache formationCache = new FormationCache(FormationCache.DEFAULT_MAX_ENTRIES,
+            FormationCache.DEFAULT_MAX_ROWS, (FORMATION_CACHE_DIR != null) ? Paths.get(FORMATION_CACHE_DIR) : null);
+
+    private static FormationLimits loadRules() {
+        String file = System.getProperty("teammate.rules");
+        if (file == null) return FormationLimits.DEFAULT;
+        try {
+            FormationLimits rules = FormationLimits.load(Paths.get(file), System.getProperty("teammate.rules.profile"));
+            System.out.println("Team rules: " + rules);
+            return rules;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Could not load team rules from " + file + ": " + e.getMessage());
+            System.out.println("Using the default rules.");
+            return FormationLimits.DEFAULT;
+        }
+    }
 
     public static void main(String[] args) {
 
+        Metrics.registerMBeans();
+        Metrics.startLogging(METRICS_LOG_SECONDS, System.out);
+
+        if (args.length > 0 && args[0].equals("--stream")) {
+            streamTeams(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--register")) {
+            registerFromFeed(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            batchTeams(args);
+            return;
+        }
+
+        openJournal();
+
         // --- LOGIN LOOP ---
         while (currentRole == Login.Role.NONE) {
             currentRole = Login.login(scanner);
@@ -57,6 +117,12 @@ public class TeamMateApp {
                     case "6":
                         saveTeamsToFile();
                         break;
+                    case "7":
+                        withdrawParticipant();
+                        break;
+                    case "8":
+                        bulkRegister();
+                        break;
                     case "9":
                         relogin();   // ← NEW
                         break;
@@ -88,6 +154,13 @@ public class TeamMateApp {
         }
 
         scanner.close();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Error closing journal: " + e.getMessage());
+            }
+        }
     }
 
     // ---------------- MENU ----------------
@@ -105,6 +178,8 @@ public class TeamMateApp {
             System.out.println("4. Form teams");
             System.out.println("5. View all teams");
             System.out.println("6. Save teams to CSV");
+            System.out.println("7. Withdraw participant");
+            System.out.println("8. Bulk register from file (JSONL/CSV)");
             System.out.println("9. Re-login");
             System.out.println("0. Exit");
         } else { // USER
@@ -125,22 +200,46 @@ public class TeamMateApp {
             path = "participants_sample.csv";
         }
 
-        // Verify CSV structure first
-        if (!csvManager.verifyParticipantsCsv(path)) {
-            System.out.println("CSV verification failed. Please try again.");
-            return;
-        }
-
+        // Verify header and load rows in a single pass (or read the snapshot if the file is unchanged)
         try {
-            List<Participant> loaded = csvManager.loadParticipants(path);
+            CsvManager.LoadResult result = csvManager.loadCached(path);
+            LoadReport report = result.getReport();
+
+            if (!report.isHeaderValid()) {
+                System.out.println(report.summary());
+                System.out.println("CSV verification failed. Please try again.");
+                return;
+            }
 
-            // --- APPEND STYLE (instead of replacing) ---
-            participants.addAll(loaded);
+            // --- APPEND STYLE (instead of replacing), skipping anyone already registered ---
+            ParticipantRegistry.BulkResult admitted = registry.registerAll(result.getParticipants());
+            List<Participant> loaded = admitted.getAccepted();
+            int placed = roster.add(loaded);
+            record(j -> j.recordAdded(loaded));
 
             csvLoaded = true;
 
             System.out.println("Loaded " + loaded.size() + " participants from " + path);
-            System.out.println("Total participants in system now: " + participants.size());
+            if (admitted.getDuplicateCount() > 0) {
+                System.out.println("Skipped " + admitted.getDuplicateCount() + " already registered ("
+                        + admitted.getDuplicateIds() + " by ID, "
+                        + admitted.getDuplicateEmails() + " by email).");
+            }
+            RosterStore.Snapshot now = roster.current();
+            System.out.println("Total participants in system now: " + now.getParticipants().size());
+
+            if (!now.getTeams().isEmpty()) {
+                System.out.println("Placed " + placed + " of them into existing teams ("
+                        + now.getWaitingCount() + " waiting for a place).");
+            }
+
+            if (report.getRejectedCount() > 0) {
+                System.out.println(report.summary());
+                System.out.print("Show skipped rows? (y/N): ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                    report.print(System.out);
+                }
+            }
 
         } catch (IOException e) {
             System.out.println("Error loading participants: " + e.getMessage());
@@ -159,13 +258,16 @@ public class TeamMateApp {
         // --- Participant ID input (numeric only, P is auto-prefixed) ---
         String idNumber;
 
+        // Only shown; the number is taken when this participant is registered with it
+        String suggested = registry.peekNextId();
+
         while (true) {
-            System.out.print("Enter participant ID number: ");
+            System.out.print("Enter participant ID number (blank for " + suggested + "): ");
             idNumber = scanner.nextLine().trim();
 
             if (idNumber.isEmpty()) {
-                System.out.println("Invalid input. Please try again.");
-                continue;
+                idNumber = suggested;
+                break;
             }
 
             if (!idNumber.matches("\\d+")) {
@@ -176,15 +278,7 @@ public class TeamMateApp {
             String fullId = "P" + idNumber;
 
             // --- Check for duplicate ID ---
-            boolean exists = false;
-            for (Participant existing : participants) {
-                if (existing.getId().equalsIgnoreCase(fullId)) {
-                    exists = true;
-                    break;
-                }
-            }
-
-            if (exists) {
+            if (registry.containsId(fullId)) {
                 System.out.println("ID already exists. Please try again.");
                 continue;
             }
@@ -211,6 +305,19 @@ public class TeamMateApp {
         }
 
 
+        String email;
+        while (true) {
+            System.out.print("Enter email (optional): ");
+            email = scanner.nextLine().trim();
+
+            if (email.isEmpty() || !registry.containsEmail(email)) {
+                break;
+            }
+
+            System.out.println("Email already registered. Please try again.");
+        }
+
+
         // ---- Game selection (1–6, based on CSV) ----
         System.out.println("Select preferred game:");
         System.out.println("  1. Chess");
@@ -247,33 +354,41 @@ public class TeamMateApp {
         }
 
         Participant p = new Participant(id, name);
+        if (!email.isEmpty()) p.setEmail(email);
         p.setPreferredGame(game);
         p.setPreferredRole(role);
         p.setSkillRating(skill);
         p.setPersonalityScore(total);  // sets raw + scaled
 
-       // --- Process survey data (personality classification) in a separate thread ---
-        Thread surveyThread = new Thread(() -> {
-            classifier.classify(p);    // sets personalityType
-        });
-        surveyThread.start();
-
+        // --- Process survey data (personality classification) on the shared pool ---
         try {
-            surveyThread.join();      // wait until classification is done
-        } catch (InterruptedException e) {
-            System.out.println("Survey processing thread interrupted: " + e.getMessage());
+            classifier.classifyAsync(p).join();    // sets personalityType
+        } catch (CompletionException e) {
+            System.out.println("Survey processing failed: " + e.getMessage());
             // If something goes wrong, keep UNKNOWN as type
         }
 
-        participants.add(p);
+        if (registry.register(p) != null) {
+            System.out.println("ID or email was registered in the meantime. Please try again.");
+            return;
+        }
+        Team team = roster.add(p);
+        record(j -> j.recordAdded(List.of(p)));
 
         System.out.println("Participant registered successfully: " + p);
 
+        if (!roster.current().getTeams().isEmpty()) {
+            System.out.println((team != null)
+                    ? "Added to " + team.getTeamName()
+                    : "No open team fits this participant yet; they are on the waiting list.");
+        }
+
     }
 
 
     // 3) VIEW ALL PARTICIPANTS
     private static void viewAllParticipants() {
+        List<Participant> participants = roster.current().getParticipants();
         if (participants.isEmpty()) {
             System.out.println("No participants available.");
             return;
@@ -287,18 +402,57 @@ public class TeamMateApp {
 
     // 4) FORM TEAMS (with a thread)
     private static void formTeams() {
-        if (participants.isEmpty()) {
+        if (roster.current().getParticipants().isEmpty()) {
             System.out.println("Please add data first.");
             return;
         }
 
         int size = readIntWithPrompt("Enter desired team size : ", 2, 100);
+        int searchSeconds = readIntWithPrompt("Seconds to search for the best teams (0 for a single run): ", 0, 600);
 
         System.out.println("Forming teams...");
+        long start = System.nanoTime();
 
+        // Forms from a snapshot; if someone withdraws meanwhile, forms again from a newer one
         Thread teamThread = new Thread(() -> {
-            TeamBuilder builder = new TeamBuilder(size);
-            teams = builder.buildTeams(participants);
+            RosterStore.Snapshot basis;
+            TeamBuilder builder;
+            List<Team> formed;
+            do {
+                basis = roster.current();
+                List<Participant> participants = basis.getParticipants();
+                String settings = "size=" + size + ", " + RULES
+                        + ((searchSeconds > 0) ? ", search seed=" + FORMATION_SEED : ", single run");
+                FormationCache.Key key = FormationCache.key(participants, settings);
+
+                FormationCache.Result cached = formationCache.get(key, participants);
+                if (cached != null) {
+                    System.out.println("Using the teams formed earlier for this roster and settings.");
+                    builder = new TeamBuilder(size, RULES, cached.getStrategy());
+                    formed = cached.getTeams();
+                } else {
+                    FormationPortfolio.Result result = (searchSeconds > 0)
+                            ? new FormationPortfolio(size, RULES, FORMATION_SEED, FormationPortfolio.DEFAULT_MAX_VARIANTS)
+                                    .run(participants, searchSeconds * 1000L)
+                            : null;
+                    if (result != null && !result.getTeams().isEmpty()) {
+                        System.out.println("Best of " + result.getVariantsFinished() + " variants: "
+                                + result.getVariant());
+                        builder = result.getBuilder();
+                        formed = result.getTeams();
+                    } else {
+                        // No search, or no variant finished in time
+                        builder = new TeamBuilder(size, RULES, FormationStrategy.choose(participants.size(), 0));
+                        formed = (participants.size() >= TeamBuilder.PARALLEL_MIN_PARTICIPANTS)
+                                ? builder.buildTeamsParallel(participants)
+                                : builder.buildTeams(participants);
+                    }
+                    // A search cut short by the deadline may come out differently next time
+                    if (result == null || result.isComplete()) {
+                        formationCache.put(key, participants, formed, builder.getStrategy());
+                    }
+                }
+            } while (!roster.installTeams(basis, builder, formed));
         });
 
         teamThread.start();
@@ -308,9 +462,18 @@ public class TeamMateApp {
         } catch (InterruptedException e) {
             System.out.println("Team formation thread interrupted: " + e.getMessage());
         }
+        RosterStore.Snapshot formed = roster.current();
+        List<Team> teams = formed.getTeams();
+        record(j -> j.recordFormed(formed.getTeamSize(), teams));
+
+        int placed = 0;
+        for (Team t : teams) {
+            placed += t.getSize();
+        }
 
         // ---------- CHANGED PART STARTS HERE ----------
-        System.out.println("Teams formed: " + teams.size());
+        System.out.println("Teams formed: " + teams.size() + " in " + (System.nanoTime() - start) / 1_000_000
+                + " ms (" + (formed.getParticipants().size() - placed) + " participants without a team)");
         for (Team t : teams) {
 
             int memberCount = t.getSize();
@@ -331,7 +494,8 @@ public class TeamMateApp {
 
     // 5) VIEW ALL TEAMS
     private static void viewAllTeams() {
-        if (teams == null || teams.isEmpty()) {
+        List<Team> teams = roster.current().getTeams();
+        if (teams.isEmpty()) {
             System.out.println("No teams have been formed yet.");
             return;
         }
@@ -349,7 +513,8 @@ public class TeamMateApp {
 
     // 6) SAVE TEAMS TO CSV
     private static void saveTeamsToFile() {
-        if (teams == null || teams.isEmpty()) {
+        List<Team> teams = roster.current().getTeams();
+        if (teams.isEmpty()) {
             System.out.println("No teams to save. Please form teams first.");
             return;
         }
@@ -368,6 +533,249 @@ public class TeamMateApp {
         }
     }
 
+    // 7) WITHDRAW PARTICIPANT
+    private static void withdrawParticipant() {
+        System.out.print("Enter participant ID to withdraw: ");
+        String id = scanner.nextLine().trim();
+
+        Participant found = registry.get(id);
+        if (found == null) {
+            System.out.println("No participant with ID " + id + ".");
+            return;
+        }
+
+        Team team = withdraw(found);
+        String withdrawnId = found.getId();
+        record(j -> j.recordWithdrawn(withdrawnId));
+
+        System.out.println("Withdrawn: " + found.getId()
+                + ((team != null) ? " (" + team.getTeamName() + " has been repaired)" : ""));
+    }
+
+    // Remove from the roster and repair their team; returns the team they were in
+    private static Team withdraw(Participant p) {
+        registry.remove(p);
+        return roster.withdraw(p);
+    }
+
+    // 8) BULK REGISTER FROM A FEED FILE
+    private static void bulkRegister() {
+        System.out.print("Enter feed file path (.jsonl or .csv): ");
+        String path = scanner.nextLine().trim();
+
+        int[] placed = new int[1];
+        RegistrationPipeline pipeline = new RegistrationPipeline(classifier, registry, batch -> {
+            placed[0] += roster.add(batch);
+            record(j -> j.recordAdded(batch));
+        });
+
+        try (Reader in = Files.newBufferedReader(Paths.get(path))) {
+            LoadReport report = pipeline.run(in, null, path);
+            System.out.println(report.summary());
+            RosterStore.Snapshot now = roster.current();
+            System.out.println("Total participants in system now: " + now.getParticipants().size());
+            if (!now.getTeams().isEmpty()) {
+                System.out.println("Placed " + placed[0] + " of them into existing teams ("
+                        + now.getWaitingCount() + " waiting for a place).");
+            }
+            if (report.getRowsLoaded() > 0) {
+                csvLoaded = true;
+            }
+        } catch (IOException e) {
+            System.out.println("Error registering participants: " + e.getMessage());
+        }
+    }
+
+    // --register <participants.csv> [feed|-]
+    // Appends the accepted records of a JSONL or CSV feed (stdin when the
+    // feed is '-' or missing) to the participants file, without logging in.
+    private static void registerFromFeed(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: TeamMateApp --register <participants.csv> [feed.jsonl|feed.csv|-]");
+            return;
+        }
+        String target = args[1];
+        String feed = (args.length > 2) ? args[2] : "-";
+
+        try {
+            ParticipantRegistry known = new ParticipantRegistry();
+            if (new File(target).exists()) {
+                known.registerAll(csvManager.load(target).getParticipants());
+            }
+
+            IOException[] writeError = new IOException[1];
+            RegistrationPipeline pipeline = new RegistrationPipeline(classifier, known, batch -> {
+                if (writeError[0] != null) return;
+                try {
+                    csvManager.appendParticipants(target, batch);
+                } catch (IOException e) {
+                    writeError[0] = e;
+                }
+            });
+
+            LoadReport report;
+            try (Reader in = feed.equals("-")
+                    ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                    : Files.newBufferedReader(Paths.get(feed))) {
+                report = pipeline.run(in, null, feed.equals("-") ? "stdin" : feed);
+            }
+            if (writeError[0] != null) {
+                throw writeError[0];
+            }
+
+            System.out.println(report.summary());
+            System.out.println(report.getRowsLoaded() + " participants added to: " + target);
+        } catch (IOException e) {
+            System.out.println("Error registering participants: " + e.getMessage());
+        }
+    }
+
+    // ---------------- JOURNAL ----------------
+
+    private interface JournalWrite {
+        void write(StateJournal journal) throws IOException;
+    }
+
+    // Restore the state saved by earlier sessions, then keep journaling
+    private static void openJournal() {
+        try {
+            journal = StateJournal.open(Paths.get(DATA_DIR), new StateJournal.Listener() {
+                @Override
+                public void added(List<Participant> list) {
+                    roster.add(registry.registerAll(list).getAccepted());
+                    csvLoaded = true;
+                }
+
+                @Override
+                public void withdrawn(String id) {
+                    Participant p = registry.get(id);
+                    if (p != null) {
+                        withdraw(p);
+                    }
+                }
+
+                @Override
+                public void formed(int size, List<Team> formed) {
+                    roster.installTeams(roster.current(),
+                            new TeamBuilder(size, RULES, FormationStrategy.greedy()), formed);
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Could not open journal in " + DATA_DIR + ": " + e.getMessage());
+            System.out.println("Changes in this session will not be saved.");
+            return;
+        }
+
+        RosterStore.Snapshot restored = roster.current();
+        if (!restored.getParticipants().isEmpty()) {
+            System.out.println("Restored " + restored.getParticipants().size() + " participants and "
+                    + restored.getTeams().size() + " teams from " + DATA_DIR);
+        }
+    }
+
+    // Journal one change; compact once the journal has grown large
+    private static void record(JournalWrite write) {
+        if (journal == null) return;
+        try {
+            write.write(journal);
+            if (journal.needsCompaction()) {
+                RosterStore.Snapshot state = roster.current();
+                journal.compact(state.getParticipants(), state.getTeamSize(), state.getTeams());
+            }
+        } catch (IOException e) {
+            System.out.println("Could not write journal: " + e.getMessage());
+        }
+    }
+
+    // --serve [port]
+    // Runs the HTTP service (see TeamMateServer) until the process is stopped. It listens on
+    // localhost unless -Dteammate.serve.bind=<address> is given, and /load reads files under
+    // -Dteammate.serve.dir (the working directory by default). A /form request gets at most
+    // -Dteammate.serve.maxFormMillis (10 seconds by default) of balancing or searching.
+    private static void serve(String[] args) {
+        int port = TeamMateServer.DEFAULT_PORT;
+        try {
+            if (args.length > 1) port = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            System.out.println("Port must be a whole number.");
+            return;
+        }
+
+        try {
+            String bind = System.getProperty("teammate.serve.bind");
+            InetAddress address = (bind != null) ? InetAddress.getByName(bind) : InetAddress.getLoopbackAddress();
+            long maxFormMillis = Long.getLong("teammate.serve.maxFormMillis",
+                    TeamMateServer.DEFAULT_MAX_FORM_MILLIS);
+            TeamMateServer server = new TeamMateServer(address, port,
+                    Paths.get(System.getProperty("teammate.serve.dir", "")), RULES, maxFormMillis);
+            server.start();
+            System.out.println("Serving on http://" + address.getHostAddress() + ":" + server.getPort() + "/");
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error starting server: " + e.getMessage());
+        }
+    }
+
+    // --batch <manifest>
+    // Forms and saves teams for every event in the manifest (see BatchScheduler), without logging in.
+    private static void batchTeams(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: TeamMateApp --batch <manifest>");
+            return;
+        }
+
+        try {
+            List<BatchScheduler.Job> jobs = BatchScheduler.readManifest(Paths.get(args[1]));
+            long start = System.nanoTime();
+            List<BatchScheduler.Result> results = new BatchScheduler(RULES).run(jobs);
+            System.out.println(BatchScheduler.summary(results, (System.nanoTime() - start) / 1_000_000));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error reading manifest: " + e.getMessage());
+        }
+    }
+
+    // --stream <input.csv> <teamSize> <output.csv> [memoryMB]
+    // Forms teams for a roster too large to hold in memory, without logging in.
+    private static void streamTeams(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: TeamMateApp --stream <input.csv> <teamSize> <output.csv> [memoryMB]");
+            return;
+        }
+
+        int teamSize;
+        long memoryMB;
+        try {
+            teamSize = Integer.parseInt(args[2]);
+            memoryMB = (args.length > 4) ? Long.parseLong(args[4]) : 256;
+        } catch (NumberFormatException e) {
+            System.out.println("Team size and memory must be whole numbers.");
+            return;
+        }
+
+        LoadReport report = new LoadReport(args[1]);
+        try {
+            StreamingTeamBuilder builder = new StreamingTeamBuilder(teamSize, RULES, memoryMB << 20,
+                    Paths.get(System.getProperty("java.io.tmpdir")));
+
+            // Read the input in windows sized from the same budget
+            try (MappedCsvLoader.ParticipantIterator source =
+                         csvManager.openParticipants(args[1], report, builder.inputWindowBytes())) {
+                if (!report.isHeaderValid()) {
+                    System.out.println(report.summary());
+                    return;
+                }
+
+                try (CsvManager.TeamWriter writer = csvManager.openTeamWriter(args[3])) {
+                    int written = builder.buildTeams(source, writer::write);
+
+                    System.out.println(report.summary());
+                    System.out.println(written + " teams saved to: " + args[3]);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error forming teams: " + e.getMessage());
+        }
+    }
+
     // ---------------- HELPER: SAFE INT INPUT ----------------
 
     private static int readIntWithPrompt(String prompt, int min, int max) {
@@ -423,21 +831,4 @@ public class TeamMateApp {
     }
 
 
-
-    private static int findHighestId(List<Participant> list) {
-        int max = 0;
-        for (Participant p : list) {
-            try {
-                // ID format: P034 → remove 'P' → convert to int
-                String num = p.getId().replaceAll("[^0-9]", "");
-                int value = Integer.parseInt(num);
-                if (value > max) {
-                    max = value;
-                }
-            } catch (Exception ignored) {}
-        }
-        return max;
-    }
-
-
 }
@@ -0,0 +1,406 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Headless HTTP mode over the same roster logic as the console app.
+ *
+ *   GET  /status                          roster and team counts
+ *   POST /load?path=<file>                load a participants CSV from the load directory
+ *   POST /participants                    bulk register a JSONL or CSV body
+ *   POST /register                        register one JSON record (see RegistrationPipeline)
+ *   POST /withdraw?id=<id>                withdraw a participant and repair their team
+ *   POST /form?teamSize=N[&balanceMillis=M][&strategy=greedy|min-cost]
+ *   POST /form?teamSize=N&searchMillis=M[&seed=S]   best of FormationPortfolio variants
+ *                                         (both budgets capped at maxFormMillis)
+ *   GET  /teams                           teams as JSON
+ *   GET  /export[?gzip=true]              teams in the saveTeams CSV layout
+ *
+ * The server has no authentication, so by default it listens on the
+ * loopback interface only, and /load reads files inside one directory
+ * (paths are taken from there and may not lead out of it).
+ *
+ * Requests run on virtual threads when the JVM has them (see
+ * WorkerThreads). The roster lives in a RosterStore: reads and exports
+ * work on its current snapshot without locking, and team formation works
+ * on a snapshot of its own, so a long formation holds up nobody.
+ */
+public class TeamMateServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final long DEFAULT_MAX_FORM_MILLIS = 10_000;
+
+    private static final int PLATFORM_THREADS = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+
+    private final CsvManager csvManager = new CsvManager();
+    private final PersonalityClassifier classifier = new PersonalityClassifier();
+    private final ParticipantRegistry registry = new ParticipantRegistry();
+
+    private final RosterStore roster = new RosterStore();
+    private final FormationLimits limits;
+    private final Path loadDirectory;
+    private final long maxFormMillis;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public TeamMateServer(int port) throws IOException {
+        this(port, FormationLimits.DEFAULT);
+    }
+
+    /**
+     * A server on the loopback interface forming teams under limits, loading
+     * files from the working directory.
+     */
+    public TeamMateServer(int port, FormationLimits limits) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, Paths.get(""), limits);
+    }
+
+    /**
+     * A server listening on address (other clients can reach it unless that
+     * is a loopback address) that loads files from loadDirectory only.
+     */
+    public TeamMateServer(InetAddress address, int port, Path loadDirectory, FormationLimits limits)
+            throws IOException {
+        this(address, port, loadDirectory, limits, DEFAULT_MAX_FORM_MILLIS);
+    }
+
+    /**
+     * As above, with the most time a /form request may ask for balancing
+     * or searching.
+     */
+    public TeamMateServer(InetAddress address, int port, Path loadDirectory, FormationLimits limits,
+                          long maxFormMillis) throws IOException {
+        if (maxFormMillis < 0) {
+            throw new IllegalArgumentException("Formation time limit cannot be negative.");
+        }
+        this.limits = limits;
+        this.loadDirectory = loadDirectory.toRealPath();
+        this.maxFormMillis = maxFormMillis;
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        executor = WorkerThreads.newExecutor("http-worker", PLATFORM_THREADS);
+        server.setExecutor(executor);
+
+        server.createContext("/status", exchange -> handle(exchange, "GET", this::status));
+        server.createContext("/load", exchange -> handle(exchange, "POST", this::load));
+        server.createContext("/participants", exchange -> handle(exchange, "POST", this::bulkRegister));
+        server.createContext("/register", exchange -> handle(exchange, "POST", this::register));
+        server.createContext("/withdraw", exchange -> handle(exchange, "POST", this::withdraw));
+        server.createContext("/form", exchange -> handle(exchange, "POST", this::form));
+        server.createContext("/teams", exchange -> handle(exchange, "GET", this::listTeams));
+        server.createContext("/export", exchange -> handle(exchange, "GET", this::export));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // ---------------- handlers ----------------
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private static void handle(HttpExchange exchange, String method, Handler handler) {
+        try {
+            if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                sendJson(exchange, 405, error("use " + method));
+                return;
+            }
+            handler.handle(exchange);
+        } catch (IllegalArgumentException e) {
+            trySend(exchange, 400, error(e.getMessage()));
+        } catch (IOException | RuntimeException e) {
+            trySend(exchange, 500, error(String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        RosterStore.Snapshot snapshot = roster.current();
+        sendJson(exchange, 200, "{\"version\":" + snapshot.getVersion()
+                + ",\"participants\":" + snapshot.getParticipants().size()
+                + ",\"teams\":" + snapshot.getTeams().size()
+                + ",\"waiting\":" + snapshot.getWaitingCount() + "}");
+    }
+
+    private void load(HttpExchange exchange) throws IOException {
+        String path = query(exchange).get("path");
+        if (path == null || path.isEmpty()) {
+            throw new IllegalArgumentException("path is required");
+        }
+
+        Path file;
+        try {
+            file = loadDirectory.resolve(path).toRealPath();
+        } catch (NoSuchFileException e) {
+            sendJson(exchange, 404, error("no such file: " + path));
+            return;
+        }
+        if (!file.startsWith(loadDirectory)) {
+            sendJson(exchange, 403, error("path is outside the load directory"));
+            return;
+        }
+
+        CsvManager.LoadResult result = csvManager.loadCached(file.toString());
+        LoadReport report = result.getReport();
+        if (!report.isHeaderValid()) {
+            sendJson(exchange, 400, error(report.getHeaderError()));
+            return;
+        }
+
+        ParticipantRegistry.BulkResult admitted = registry.registerAll(result.getParticipants());
+        roster.add(admitted.getAccepted());
+        sendJson(exchange, 200, "{\"report\":" + reportJson(report)
+                + ",\"added\":" + admitted.getAccepted().size()
+                + ",\"alreadyRegistered\":" + admitted.getDuplicateCount() + "}");
+    }
+
+    private void bulkRegister(HttpExchange exchange) throws IOException {
+        RegistrationPipeline pipeline = new RegistrationPipeline(classifier, registry, roster::add);
+        LoadReport report = pipeline.run(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), null, "request");
+        sendJson(exchange, report.isHeaderValid() ? 200 : 400, reportJson(report));
+    }
+
+    private void register(HttpExchange exchange) throws IOException {
+        String record = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+        LoadReport report = new LoadReport("request");
+
+        Participant p = new RegistrationPipeline(classifier, registry, roster::add)
+                .registerOne(record, RegistrationPipeline.Format.JSONL, report);
+        if (p == null) {
+            boolean duplicate = report.getCount(LoadReport.Reason.DUPLICATE_ID) > 0
+                    || report.getCount(LoadReport.Reason.DUPLICATE_EMAIL) > 0;
+            sendJson(exchange, duplicate ? 409 : 400, reportJson(report));
+            return;
+        }
+
+        Team team = roster.add(p);
+        sendJson(exchange, 201, "{\"id\":" + quote(p.getId())
+                + ",\"type\":" + quote(p.getPersonalityType())
+                + ",\"team\":" + ((team != null) ? quote(team.getTeamName()) : "null") + "}");
+    }
+
+    private void withdraw(HttpExchange exchange) throws IOException {
+        String id = query(exchange).get("id");
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("id is required");
+        }
+
+        Participant p = registry.get(id);
+        if (p == null || !registry.remove(p)) {
+            sendJson(exchange, 404, error("no participant with ID " + id));
+            return;
+        }
+        roster.withdraw(p);
+        sendJson(exchange, 200, "{\"withdrawn\":" + quote(id) + "}");
+    }
+
+    private void form(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        int teamSize = intParam(query, "teamSize", -1);
+        long balanceMillis = Math.min(intParam(query, "balanceMillis", 0), maxFormMillis);
+        FormationStrategy strategy = query.containsKey("strategy")
+                ? FormationStrategy.named(query.get("strategy")) : null;
+        long searchMillis = Math.min(intParam(query, "searchMillis", 0), maxFormMillis);
+        long seed = intParam(query, "seed", 0);
+
+        long start = System.nanoTime();
+        RosterStore.Snapshot basis;
+        TeamBuilder builder;
+        List<Team> formed;
+        do {
+            // Someone left meanwhile and may be in the result: form again from a newer snapshot.
+            // Participants who joined meanwhile are not in the result; they start out waiting.
+            basis = roster.current();
+            int size = basis.getParticipants().size();
+            builder = new TeamBuilder(teamSize, limits,
+                    (strategy == null) ? FormationStrategy.choose(size, balanceMillis) : strategy);
+            formed = List.of();
+            if (searchMillis > 0) {
+                FormationPortfolio.Result result =
+                        new FormationPortfolio(teamSize, limits, seed, FormationPortfolio.DEFAULT_MAX_VARIANTS)
+                                .run(basis.getParticipants(), searchMillis);
+                if (!result.getTeams().isEmpty()) {
+                    builder = result.getBuilder();
+                    formed = result.getTeams();
+                }
+            }
+            if (formed.isEmpty()) {
+                formed = build(builder, basis.getParticipants(), balanceMillis);
+            }
+        } while (!roster.installTeams(basis, builder, formed));
+
+        RosterStore.Snapshot installed = roster.current();
+        sendJson(exchange, 200, "{\"version\":" + installed.getVersion()
+                + ",\"strategy\":" + quote(builder.getStrategy().toString())
+                + ",\"teams\":" + installed.getTeams().size() + ",\"waiting\":" + installed.getWaitingCount()
+                + ",\"millis\":" + (System.nanoTime() - start) / 1_000_000 + "}");
+    }
+
+    private void listTeams(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+
+        List<Team> teams = roster.current().getTeams();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            out.write('[');
+            for (int t = 0; t < teams.size(); t++) {
+                Team team = teams.get(t);
+                if (t > 0) out.write(',');
+                out.write("{\"name\":" + quote(team.getTeamName())
+                        + ",\"totalSkill\":" + team.getTotalSkill() + ",\"members\":[");
+                List<Participant> members = team.getMembers();
+                for (int m = 0; m < members.size(); m++) {
+                    if (m > 0) out.write(',');
+                    out.write(quote(members.get(m).getId()));
+                }
+                out.write("]}");
+            }
+            out.write(']');
+        }
+    }
+
+    private void export(HttpExchange exchange) throws IOException {
+        boolean gzip = Boolean.parseBoolean(query(exchange).get("gzip"));
+        exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, 0);
+
+        OutputStream body = gzip ? new GZIPOutputStream(exchange.getResponseBody(), 1 << 16)
+                : exchange.getResponseBody();
+        try (CsvManager.TeamWriter writer = new CsvManager.TeamWriter(new BufferedWriter(
+                new OutputStreamWriter(body, StandardCharsets.UTF_8), 1 << 16))) {
+            for (Team team : roster.current().getTeams()) {
+                writer.write(team);
+            }
+        }
+    }
+
+    // ---------------- formation ----------------
+
+    private static List<Team> build(TeamBuilder builder, List<Participant> roster, long balanceMillis) {
+        if (balanceMillis > 0) {
+            return builder.buildTeamsOptimized(roster, balanceMillis);
+        }
+        return (roster.size() >= TeamBuilder.PARALLEL_MIN_PARTICIPANTS)
+                ? builder.buildTeamsParallel(roster)
+                : builder.buildTeams(roster);
+    }
+
+    // ---------------- HTTP helpers ----------------
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode((eq < 0) ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = (eq < 0) ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            if (defaultValue < 0) throw new IllegalArgumentException(name + " is required");
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a whole number");
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // After a failure the headers may already be out; then there is nothing left to send
+    private static void trySend(HttpExchange exchange, int status, String body) {
+        try {
+            sendJson(exchange, status, body);
+        } catch (IOException | RuntimeException ignored) {
+        }
+    }
+
+    private static String reportJson(LoadReport report) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"read\":").append(report.getRowsRead())
+                .append(",\"loaded\":").append(report.getRowsLoaded());
+        if (!report.isHeaderValid()) {
+            sb.append(",\"headerError\":").append(quote(report.getHeaderError()));
+        }
+        sb.append(",\"rejected\":{");
+        boolean first = true;
+        for (LoadReport.Reason reason : LoadReport.Reason.values()) {
+            int count = report.getCount(reason);
+            if (count == 0) continue;
+            if (!first) sb.append(',');
+            sb.append(quote(reason.getDescription())).append(':').append(count);
+            first = false;
+        }
+        return sb.append("}}").toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String quote(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,409 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Optional pass after greedy formation that evens out total skill between
+ * teams.
+ *
+ * The score is the sum of squared team skill totals. The overall total is
+ * fixed, so a lower score means a smaller spread. Moves swap two members of
+ * the same personality type between teams, so leader and thinker counts and
+ * team sizes never change. The only checks left are the per-team game limit
+ * and role limit (when roles are capped), done with per-team counters. A
+ * swap's score change is worked out from the two team totals alone, so each
+ * step is O(1) whatever the roster size.
+ *
+ * One search runs per pool thread until the time budget is used up. The
+ * first is plain hill climbing and the others are simulated annealing with
+ * different seeds. Each search keeps the best assignment it has visited,
+ * and the best of those wins.
+ */
+public class TeamOptimizer {
+
+    private static final int CLOCK_CHECK_INTERVAL = 1 << 12;
+    private static final int TEMPERATURE_SAMPLES = 256;
+
+    private final int maxSameGamePerTeam;
+    private final int maxSameRolePerTeam;
+
+    public TeamOptimizer(int maxSameGamePerTeam) {
+        this(maxSameGamePerTeam, FormationLimits.NO_LIMIT);
+    }
+
+    public TeamOptimizer(int maxSameGamePerTeam, int maxSameRolePerTeam) {
+        this.maxSameGamePerTeam = maxSameGamePerTeam;
+        this.maxSameRolePerTeam = maxSameRolePerTeam;
+    }
+
+    public TeamOptimizer(FormationLimits limits) {
+        this(limits.getMaxSameGamePerTeam(), limits.getMaxSameRolePerTeam());
+    }
+
+    /**
+     * Improve the formation for up to budgetMillis. Returns the input
+     * formation when nothing better was found.
+     */
+    public Formation optimize(ParticipantStore store, Formation formation, long budgetMillis,
+                              ForkJoinPool pool) {
+        if (formation.getTeamCount() < 2 || formation.getPlacedCount() < 2 || budgetMillis <= 0) {
+            return formation;
+        }
+
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+        int[][] rowsByType = rowsByType(store, formation);
+
+        List<Callable<Search>> tasks = new ArrayList<>();
+        for (int r = 0; r < Math.max(1, pool.getParallelism()); r++) {
+            boolean anneal = r > 0;
+            long seed = r;
+            tasks.add(() -> {
+                Search search = new Search(store, formation, rowsByType, seed);
+                search.run(deadline, anneal);
+                return search;
+            });
+        }
+
+        Search best = null;
+        try {
+            for (Future<Search> f : pool.invokeAll(tasks)) {
+                Search search = f.get();
+                if (best == null || search.bestScore < best.bestScore) {
+                    best = search;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Team optimisation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Team optimisation failed", e.getCause());
+        }
+
+        if (best.bestScore >= best.initialScore) {
+            return formation;
+        }
+        return best.toFormation(formation);
+    }
+
+    /**
+     * optimize on the search pool.
+     */
+    public Formation optimize(ParticipantStore store, Formation formation, long budgetMillis) {
+        return optimize(store, formation, budgetMillis, searchPool());
+    }
+
+    /**
+     * Pool that optimize and FormationPortfolio run on by default. Searches
+     * keep every thread busy until their deadline, so they get half the
+     * cores of their own and leave the common pool to CSV parsing,
+     * classification and exports.
+     */
+    static ForkJoinPool searchPool() {
+        return SearchPool.POOL;
+    }
+
+    // Created on first use
+    private static final class SearchPool {
+        static final ForkJoinPool POOL =
+                new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * One hill-climbing search of a fixed number of steps on the calling
+     * thread, so the result depends only on the seed. Returns the input
+     * formation when nothing better was found, or null when the deadline
+     * (System.nanoTime) or an interrupt came first.
+     */
+    Formation polish(ParticipantStore store, Formation formation, long seed, long steps, long deadline) {
+        if (formation.getTeamCount() < 2 || formation.getPlacedCount() < 2 || steps <= 0) {
+            return formation;
+        }
+
+        Search search = new Search(store, formation, rowsByType(store, formation), seed);
+        for (long step = 1; step <= steps; step++) {
+            if (step % CLOCK_CHECK_INTERVAL == 0
+                    && (System.nanoTime() >= deadline || Thread.currentThread().isInterrupted())) {
+                return null;
+            }
+            search.step(0);
+        }
+        return (search.bestScore < search.initialScore) ? search.toFormation(formation) : formation;
+    }
+
+    // Placed rows grouped by personality type code
+    private static int[][] rowsByType(ParticipantStore store, Formation formation) {
+        int types = store.typeCodeCount();
+        int[] counts = new int[types];
+        for (int i = 0; i < formation.getPlacedCount(); i++) {
+            counts[store.typeCode(formation.getPlacedRow(i))]++;
+        }
+
+        int[][] rows = new int[types][];
+        for (int t = 0; t < types; t++) {
+            rows[t] = new int[counts[t]];
+            counts[t] = 0;
+        }
+        for (int i = 0; i < formation.getPlacedCount(); i++) {
+            int row = formation.getPlacedRow(i);
+            int type = store.typeCode(row);
+            rows[type][counts[type]++] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * One independent search over a private copy of the assignment.
+     */
+    private final class Search {
+        private final ParticipantStore store;
+        private final int[][] rowsByType;
+        private final int[] placed;
+        private final SplittableRandom random;
+
+        private final int[] teamOf;
+        private final int[] totals;
+        private final int[] gameCounts;     // [team * gameStride + game]
+        private final int gameStride;
+        private final int[] roleCounts;     // [team * roleStride + role], null when roles are not capped
+        private final int roleStride;
+        private final int emptyRole;
+
+        final long initialScore;
+        long score;
+        long bestScore;
+
+        // The best assignment, while the search has moved away from it: the swaps
+        // made since (undone in reverse), or a copy once there were too many
+        private boolean atBest = true;
+        private int[] swapLog = new int[64];
+        private int swapLogLength = -1;     // -1 when not logging
+        private int[] bestTeamOf;
+
+        Search(ParticipantStore store, Formation formation, int[][] rowsByType, long seed) {
+            this.store = store;
+            this.rowsByType = rowsByType;
+            this.random = new SplittableRandom(seed);
+            this.gameStride = store.gameCodeCount();
+            this.roleStride = store.roleCodeCount();
+            this.emptyRole = store.emptyRoleCode();
+
+            int teamCount = formation.getTeamCount();
+            teamOf = new int[formation.getRowCount()];
+            totals = new int[teamCount];
+            gameCounts = new int[teamCount * gameStride];
+            roleCounts = (maxSameRolePerTeam != FormationLimits.NO_LIMIT) ? new int[teamCount * roleStride] : null;
+            placed = new int[formation.getPlacedCount()];
+
+            for (int i = 0; i < placed.length; i++) {
+                int row = formation.getPlacedRow(i);
+                int team = formation.getTeamOf(row);
+                placed[i] = row;
+                teamOf[row] = team;
+                totals[team] += store.skill(row);
+                int game = store.gameCode(row);
+                if (game >= 0) {
+                    gameCounts[team * gameStride + game]++;
+                }
+                int role = store.roleCode(row);
+                if (roleCounts != null && role >= 0) {
+                    roleCounts[team * roleStride + role]++;
+                }
+            }
+
+            long s = 0;
+            for (int total : totals) {
+                s += (long) total * total;
+            }
+            initialScore = s;
+            score = s;
+            bestScore = s;
+        }
+
+        void run(long deadline, boolean anneal) {
+            long start = System.nanoTime();
+            double startTemperature = anneal ? startTemperature() : 0;
+            double temperature = startTemperature;
+
+            for (long step = 1; ; step++) {
+                if (step % CLOCK_CHECK_INTERVAL == 0) {
+                    long now = System.nanoTime();
+                    if (now >= deadline || Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    // Cool linearly to zero so the search ends on a local optimum
+                    double left = (deadline - now) / (double) (deadline - start);
+                    temperature = startTemperature * left;
+                }
+
+                step(temperature);
+            }
+        }
+
+        // One random same-type swap, kept if it helps (or by the annealing rule)
+        void step(double temperature) {
+            int a = placed[random.nextInt(placed.length)];
+            int[] sameType = rowsByType[store.typeCode(a)];
+            int b = sameType[random.nextInt(sameType.length)];
+
+            long delta = delta(a, b);
+            if (delta == Long.MAX_VALUE) return;
+
+            if (delta < 0 || (temperature > 0 && delta > 0
+                    && random.nextDouble() < Math.exp(-delta / temperature))) {
+                swap(a, b, delta);
+            }
+        }
+
+        // Average score increase of a random swap, so early annealing accepts them often
+        private double startTemperature() {
+            long sum = 0;
+            int count = 0;
+            for (int i = 0; i < TEMPERATURE_SAMPLES; i++) {
+                int a = placed[random.nextInt(placed.length)];
+                int[] sameType = rowsByType[store.typeCode(a)];
+                long delta = delta(a, sameType[random.nextInt(sameType.length)]);
+                if (delta != Long.MAX_VALUE && delta > 0) {
+                    sum += delta;
+                    count++;
+                }
+            }
+            return (count == 0) ? 1 : (double) sum / count;
+        }
+
+        /**
+         * Score change from swapping a and b, or Long.MAX_VALUE when the swap
+         * changes nothing or breaks the game limit.
+         */
+        private long delta(int a, int b) {
+            int teamA = teamOf[a];
+            int teamB = teamOf[b];
+            if (teamA == teamB) return Long.MAX_VALUE;
+
+            long d = store.skill(b) - store.skill(a);
+            if (d == 0) return Long.MAX_VALUE;
+
+            int gameA = store.gameCode(a);
+            int gameB = store.gameCode(b);
+            if (gameA != gameB) {
+                if (gameB >= 0 && gameCounts[teamA * gameStride + gameB] >= maxSameGamePerTeam) {
+                    return Long.MAX_VALUE;
+                }
+                if (gameA >= 0 && gameCounts[teamB * gameStride + gameA] >= maxSameGamePerTeam) {
+                    return Long.MAX_VALUE;
+                }
+            }
+
+            if (roleCounts != null) {
+                int roleA = store.roleCode(a);
+                int roleB = store.roleCode(b);
+                if (roleA != roleB) {
+                    if (roleB >= 0 && roleB != emptyRole
+                            && roleCounts[teamA * roleStride + roleB] >= maxSameRolePerTeam) {
+                        return Long.MAX_VALUE;
+                    }
+                    if (roleA >= 0 && roleA != emptyRole
+                            && roleCounts[teamB * roleStride + roleA] >= maxSameRolePerTeam) {
+                        return Long.MAX_VALUE;
+                    }
+                }
+            }
+
+            // (A + d)^2 + (B - d)^2 - A^2 - B^2
+            return 2 * d * (totals[teamA] - totals[teamB]) + 2 * d * d;
+        }
+
+        private void swap(int a, int b, long delta) {
+            if (atBest && delta > 0) {
+                atBest = false;
+                bestTeamOf = null;
+                swapLogLength = 0;
+            }
+            if (swapLogLength >= 0) {
+                logSwap(a, b);
+            }
+
+            int teamA = teamOf[a];
+            int teamB = teamOf[b];
+            int d = store.skill(b) - store.skill(a);
+
+            totals[teamA] += d;
+            totals[teamB] -= d;
+
+            int gameA = store.gameCode(a);
+            int gameB = store.gameCode(b);
+            if (gameA >= 0) {
+                gameCounts[teamA * gameStride + gameA]--;
+                gameCounts[teamB * gameStride + gameA]++;
+            }
+            if (gameB >= 0) {
+                gameCounts[teamB * gameStride + gameB]--;
+                gameCounts[teamA * gameStride + gameB]++;
+            }
+
+            if (roleCounts != null) {
+                int roleA = store.roleCode(a);
+                int roleB = store.roleCode(b);
+                if (roleA >= 0) {
+                    roleCounts[teamA * roleStride + roleA]--;
+                    roleCounts[teamB * roleStride + roleA]++;
+                }
+                if (roleB >= 0) {
+                    roleCounts[teamB * roleStride + roleB]--;
+                    roleCounts[teamA * roleStride + roleB]++;
+                }
+            }
+
+            teamOf[a] = teamB;
+            teamOf[b] = teamA;
+            score += delta;
+
+            if (score < bestScore) {
+                bestScore = score;
+                atBest = true;
+                bestTeamOf = null;
+                swapLogLength = -1;
+            }
+        }
+
+        // Beyond one logged swap per placed row, copying the best assignment is cheaper
+        private void logSwap(int a, int b) {
+            if (swapLogLength == swapLog.length) {
+                if (swapLogLength >= 2 * placed.length) {
+                    bestTeamOf = undoLoggedSwaps();
+                    swapLogLength = -1;
+                    return;
+                }
+                swapLog = Arrays.copyOf(swapLog, swapLog.length * 2);
+            }
+            swapLog[swapLogLength++] = a;
+            swapLog[swapLogLength++] = b;
+        }
+
+        private int[] undoLoggedSwaps() {
+            int[] best = teamOf.clone();
+            for (int i = swapLogLength - 2; i >= 0; i -= 2) {
+                int a = swapLog[i];
+                int b = swapLog[i + 1];
+                int team = best[a];
+                best[a] = best[b];
+                best[b] = team;
+            }
+            return best;
+        }
+
+        // The best assignment visited, in the original placement order so members keep their positions
+        Formation toFormation(Formation original) {
+            int[] best = atBest ? teamOf : (swapLogLength >= 0) ? undoLoggedSwaps() : bestTeamOf;
+            Formation result = new Formation(original.getRowCount(), original.getTeamCount());
+            for (int row : placed) {
+                result.place(row, best[row]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.Arrays;
+
+/**
+ * FormationLimits compiled against a ParticipantStore's codes into bit
+ * masks, once per FormationState, and extended when the store gives out
+ * new codes.
+ *
+ * Every capped category (each game, thinkers, and each role when roles are
+ * capped) gets one bit. A team's state word has that bit set while the
+ * team is at the cap, FULL while it cannot take anyone and HAS_THINKER once
+ * it holds a thinker. A row's mask is FULL plus the bits of its categories,
+ * so a team can take a row exactly when (word & mask) == 0, however many
+ * rules there are.
+ */
+final class TeamRules {
+
+    static final long FULL = 1L;
+    static final long HAS_THINKER = 1L << 1;
+    private static final int FIRST_CATEGORY = 2;
+
+    private final FormationLimits limits;
+    private final boolean rolesCapped;
+    private final int emptyRole;
+    private final long[] gameBits;       // [game]
+    private final long[] roleBits;       // [role], all 0 when roles are not capped
+    private final long thinkerBit;
+    private final long allGameBits;
+    private final int nextBit;           // first unused bit
+
+    private TeamRules(FormationLimits limits, int games, int roles, boolean rolesCapped, int emptyRole) {
+        this.limits = limits;
+        this.rolesCapped = rolesCapped;
+        this.emptyRole = emptyRole;
+        int bit = FIRST_CATEGORY;
+
+        gameBits = new long[games];
+        long all = 0;
+        for (int g = 0; g < games; g++) {
+            gameBits[g] = 1L << bit++;
+            all |= gameBits[g];
+        }
+        allGameBits = all;
+
+        thinkerBit = 1L << bit++;
+
+        roleBits = new long[roles];
+        for (int r = 0; r < roles && rolesCapped; r++) {
+            if (r != emptyRole) roleBits[r] = 1L << bit++;
+        }
+        nextBit = bit;
+    }
+
+    // base with the next free bits given to the games and roles past its own
+    private TeamRules(TeamRules base, int games, int roles) {
+        this.limits = base.limits;
+        this.rolesCapped = base.rolesCapped;
+        this.emptyRole = base.emptyRole;
+        this.thinkerBit = base.thinkerBit;
+        int bit = base.nextBit;
+
+        gameBits = Arrays.copyOf(base.gameBits, Math.max(games, base.gameBits.length));
+        long all = base.allGameBits;
+        for (int g = base.gameBits.length; g < gameBits.length; g++) {
+            gameBits[g] = 1L << bit++;
+            all |= gameBits[g];
+        }
+        allGameBits = all;
+
+        roleBits = Arrays.copyOf(base.roleBits, Math.max(roles, base.roleBits.length));
+        for (int r = base.roleBits.length; r < roleBits.length && rolesCapped; r++) {
+            if (r != emptyRole) roleBits[r] = 1L << bit++;
+        }
+        nextBit = bit;
+    }
+
+    /**
+     * Rules for the games and roles known so far, or null when they need
+     * more than 64 bits.
+     */
+    static TeamRules compile(FormationLimits limits, int games, int roles, int emptyRole) {
+        boolean rolesCapped = limits.getMaxSameRolePerTeam() != FormationLimits.NO_LIMIT;
+        int roleCategories = rolesCapped ? roles - ((emptyRole >= 0 && emptyRole < roles) ? 1 : 0) : 0;
+        if (FIRST_CATEGORY + games + 1 + roleCategories > Long.SIZE) {
+            return null;
+        }
+        return new TeamRules(limits, games, roles, rolesCapped, emptyRole);
+    }
+
+    /**
+     * These rules with bits for the games and roles given out since, or
+     * null when they no longer fit in 64 bits. Existing bits keep their
+     * place, so state words made under these rules stay valid: no team
+     * has reached the cap of a game or role no one has yet.
+     */
+    TeamRules extend(int games, int roles) {
+        int needed = Math.max(0, games - gameBits.length);
+        for (int r = roleBits.length; r < roles && rolesCapped; r++) {
+            if (r != emptyRole) needed++;
+        }
+        if (needed == 0 && roles <= roleBits.length) return this;
+        if (nextBit + needed > Long.SIZE) return null;
+        return new TeamRules(this, games, roles);
+    }
+
+    FormationLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Mask of a row with these codes (codes the store gives out after
+     * compiling are not capped).
+     */
+    long maskOf(int game, int role, int type) {
+        long mask = FULL;
+        if (game >= 0 && game < gameBits.length) mask |= gameBits[game];
+        if (role >= 0 && role < roleBits.length) mask |= roleBits[role];
+        if (type == CodeDictionary.TYPE_THINKER) mask |= thinkerBit;
+        return mask;
+    }
+
+    long gameBit(int game) {
+        return (game >= 0 && game < gameBits.length) ? gameBits[game] : 0;
+    }
+
+    long roleBit(int role) {
+        return (role >= 0 && role < roleBits.length) ? roleBits[role] : 0;
+    }
+
+    long thinkerBit() {
+        return thinkerBit;
+    }
+
+    // Which rule a team was turned down by, given word & mask; game caps are checked first
+    boolean blocksGame(long blocking) {
+        return (blocking & allGameBits) != 0;
+    }
+
+    boolean blocksThinkers(long blocking) {
+        return (blocking & thinkerBit) != 0;
+    }
+}
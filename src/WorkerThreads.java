@@ -0,0 +1,31 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for blocking work (queues, sockets). Uses one virtual thread
+ * per task when the JVM has them (Java 21+); on older JVMs, a fixed pool
+ * of daemon platform threads.
+ */
+final class WorkerThreads {
+
+    private WorkerThreads() {
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor when available, looked up
+     * reflectively so the code still compiles and runs on Java 17.
+     */
+    static ExecutorService newExecutor(String name, int platformThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newFixedThreadPool(platformThreads, r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}